@@ -0,0 +1,153 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation benchmark for {@link DatabaseHandler#searchSounds} on a table of 100k sounds.
+ * Every prefix the user can type has to be searched within one frame (16 ms), measured as
+ * the median of several rounds. The database is a separate file that is deleted afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoundSearchBenchmarkTest {
+
+    private static final String LOG_TAG = "SOUNDSEARCHBENCHMARK";
+
+    private static final String DATABASE_NAME = "search_benchmark.db";
+
+    private static final int SOUND_COUNT = 100000;
+    private static final int WORD_COUNT = 3000;
+
+    private static final int ROUNDS = 21;
+    private static final long FRAME_BUDGET_MS = 16;
+
+    // Single letters have no prefix index and match the most sounds, they are the slowest case
+    private static final String[] QUERIES = {"a", "q", "ai", "air", "air h", "air horn", "Air-Horn", "xyz"};
+
+    private static Context context;
+    private static DatabaseHandler databaseHandler;
+
+    @BeforeClass
+    public static void createSounds() throws Exception {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        databaseHandler = new DatabaseHandler(context, DATABASE_NAME);
+
+        // Names of one to three random words, e.g. "Air Horn", so the prefixes match like real names
+        Random random = new Random(42);
+        String[] words = new String[WORD_COUNT];
+        words[0] = "air";
+        words[1] = "horn";
+        for (int i = 2; i < WORD_COUNT; i++) {
+            char[] word = new char[3 + random.nextInt(7)];
+            for (int j = 0; j < word.length; j++) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            words[i] = new String(word);
+        }
+
+        SQLiteDatabase database = databaseHandler.getWritableDatabase();
+        // The triggers of main_table add every sound to the full-text index as well
+        SQLiteStatement insert = database.compileStatement("INSERT INTO main_table(soundKey, soundName) VALUES (?, ?)");
+
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < SOUND_COUNT; i++) {
+                StringBuilder name = new StringBuilder();
+                int wordCount = 1 + random.nextInt(3);
+                for (int j = 0; j < wordCount; j++) {
+                    String word = words[random.nextInt(WORD_COUNT)];
+                    if (j > 0)
+                        name.append(' ');
+                    name.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                }
+
+                insert.bindString(1, "sound" + i);
+                insert.bindString(2, name.toString());
+                insert.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @AfterClass
+    public static void deleteSounds() throws Exception {
+        databaseHandler.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void searchIsSortedAndLimited() throws Exception {
+        Cursor cursor = databaseHandler.searchSounds("a", SoundSearch.MAX_RESULTS, null);
+        try {
+            assertEquals(SoundSearch.MAX_RESULTS, cursor.getCount());
+
+            int nameIndex = cursor.getColumnIndex("soundName");
+            String previous = null;
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(nameIndex);
+                assertTrue(previous == null || previous.compareTo(name) <= 0);
+                previous = name;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void searchFitsIntoOneFrame() throws Exception {
+        for (String query : QUERIES) {
+            long[] times = new long[ROUNDS];
+            int count = 0;
+
+            // The first search reads the index into the page cache, it is not counted
+            count(query);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                count = count(query);
+                times[round] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+
+            Arrays.sort(times);
+            long medianMs = times[ROUNDS / 2] / 1000000;
+
+            Log.i(LOG_TAG, "'" + query + "': " + count + " sounds, median " + medianMs
+                    + " ms, max " + times[ROUNDS - 1] / 1000000 + " ms");
+
+            assertTrue("Searching '" + query + "' took " + medianMs + " ms", medianMs < FRAME_BUDGET_MS);
+        }
+    }
+
+    // Runs the search and steps through all rows like SoundSearch does, the query only runs when the Cursor is read
+    private static int count(String query) {
+        Cursor cursor = databaseHandler.searchSounds(query, SoundSearch.MAX_RESULTS, null);
+        try {
+            int count = 0;
+            while (cursor.moveToNext()) {
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.SparseArray;
+
+// Runs a SoundEngine on its own thread so the UI thread only has to put commands into a queue
+// Commands for the same sound are coalesced, a burst of taps on one button results in a single restart
+public class AudioThread implements SoundEngine, Handler.Callback {
+
+    // Define all commands that can be sent to the audio thread
+    private static final int MSG_PLAY = 1;
+    private static final int MSG_STOP_ALL = 2;
+    private static final int MSG_PRELOAD = 3;
+    private static final int MSG_RELEASE = 4;
+    private static final int MSG_UNLOAD = 5;
+
+    private final SoundEngine engine;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // One token object per sound, Handler.removeMessages() compares the objects by identity
+    private final SparseArray<Object> soundTokens = new SparseArray<>();
+
+    // The engine is used only by the audio thread afterwards
+    // Everything it creates lazily (SoundPool, MediaPlayer) delivers its callbacks to the audio thread as well
+    public AudioThread(SoundEngine engine){
+
+        this.engine = engine;
+
+        thread = new HandlerThread("AudioThread", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+
+        handler = new Handler(thread.getLooper(), this);
+    }
+
+    @Override
+    public void preload(int soundID){
+
+        Object token = getToken(soundID);
+
+        // The sound is already waiting to be loaded
+        if (handler.hasMessages(MSG_PRELOAD, token) || handler.hasMessages(MSG_PLAY, token))
+            return;
+
+        handler.sendMessage(handler.obtainMessage(MSG_PRELOAD, soundID, 0, token));
+    }
+
+    @Override
+    public void unload(int soundID){
+
+        Object token = getToken(soundID);
+
+        // A sound that is about to be played must stay in memory
+        if (handler.hasMessages(MSG_PLAY, token))
+            return;
+
+        // A preload that has not been handled yet is simply dropped
+        handler.removeMessages(MSG_PRELOAD, token);
+        handler.removeMessages(MSG_UNLOAD, token);
+        handler.sendMessage(handler.obtainMessage(MSG_UNLOAD, soundID, 0, token));
+    }
+
+    // The engine answers on the calling thread, it only reads what the audio thread has found out already
+    @Override
+    public long getDecodedBytes(int soundID){
+
+        return engine.getDecodedBytes(soundID);
+    }
+
+    @Override
+    public void play(int soundID){
+
+        Object token = getToken(soundID);
+
+        // Replace a play command for the same sound that has not been handled yet
+        handler.removeMessages(MSG_PLAY, token);
+        handler.removeMessages(MSG_PRELOAD, token);
+        handler.removeMessages(MSG_UNLOAD, token);
+        handler.sendMessage(handler.obtainMessage(MSG_PLAY, soundID, 0, token));
+    }
+
+    @Override
+    public void stopAll(){
+
+        // Sounds that have not been started yet don't have to be started at all
+        handler.removeMessages(MSG_PLAY);
+        handler.sendEmptyMessage(MSG_STOP_ALL);
+    }
+
+    @Override
+    public void release(){
+
+        handler.removeCallbacksAndMessages(null);
+        handler.sendEmptyMessage(MSG_RELEASE);
+    }
+
+    // Gets called on the audio thread for every command in the queue
+    @Override
+    public boolean handleMessage(Message msg) {
+
+        switch (msg.what){
+
+            case MSG_PLAY:
+                engine.play(msg.arg1);
+                return true;
+
+            case MSG_STOP_ALL:
+                engine.stopAll();
+                return true;
+
+            case MSG_PRELOAD:
+                engine.preload(msg.arg1);
+                return true;
+
+            case MSG_UNLOAD:
+                engine.unload(msg.arg1);
+                return true;
+
+            case MSG_RELEASE:
+                engine.release();
+                thread.quit();
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private synchronized Object getToken(int soundID){
+
+        Object token = soundTokens.get(soundID);
+
+        if (token == null){
+
+            token = new Object();
+            soundTokens.put(soundID, token);
+        }
+
+        return token;
+    }
+}
@@ -1,16 +1,18 @@
 package de.codereddev.howtoandroidsoundboard;
 
-import android.app.Activity;
-import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 public class DatabaseHandler extends SQLiteOpenHelper {
 
@@ -19,7 +21,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
     // Define a database name and version
     private static final String DATABASE_NAME = "soundboard.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
 
     // MAIN_TABLE contains all sounds for the soundboard
     // Define information about the main table
@@ -27,34 +29,95 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
     private static final String MAIN_ID = "_id";
     private static final String MAIN_NAME = "soundName";
-    private static final String MAIN_ITEM_ID = "soundId";
+    // The key is the entry name of the raw resource (e.g. "audio01" for R.raw.audio01)
+    // Unlike the resource id it stays the same when resources are added or removed
+    private static final String MAIN_KEY = "soundKey";
 
     // FAVORITES_TABLE contains all sounds that were set as favorites by the user
     // Define information about the favorites table
     private static final String FAVORITES_TABLE = "favorites_table";
 
     private static final String FAVORITES_ID = "_id";
-    private static final String FAVORITES_NAME = "favoName";
-    private static final String FAVORITES_ITEM_ID = "favoId";
+    private static final String FAVORITES_KEY = "favoKey";
+
+    // MAIN_SEARCH_TABLE is a full-text index of the sound names in the MAIN_TABLE
+    // It doesn't store the names itself (external content), its docid is the _id of the sound
+    private static final String MAIN_SEARCH_TABLE = "main_search";
+
+    // Tables of database version 2 and older used the resource id which changes between app versions
+    // The old favorites are kept in FAVORITES_LEGACY_TABLE until the sound collection has been created again
+    private static final String FAVORITES_LEGACY_TABLE = "favorites_legacy";
+    private static final String FAVORITES_LEGACY_NAME = "favoName";
 
     // Define the SQL statements to create both tables
-    private static final String SQL_CREATE_MAIN_TABLE = "CREATE TABLE IF NOT EXISTS " + MAIN_TABLE + "(" + MAIN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + MAIN_NAME + " TEXT, " + MAIN_ITEM_ID + " INTEGER unique);";
-    // The sound resource id in FAVORITES_TABLE is not unique because we have to set it again on every app update because every resource id changes if you add new resources
-    private static final String SQL_CREATE_FAVORITES_TABLE = "CREATE TABLE IF NOT EXISTS " + FAVORITES_TABLE + "(" + FAVORITES_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + FAVORITES_NAME + " TEXT, " + FAVORITES_ITEM_ID + " INTEGER);";
+    private static final String SQL_CREATE_MAIN_TABLE = "CREATE TABLE IF NOT EXISTS " + MAIN_TABLE + "(" + MAIN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + MAIN_KEY + " TEXT NOT NULL UNIQUE, " + MAIN_NAME + " TEXT);";
+    // A favorite references its sound by the key, removing a sound from the MAIN_TABLE removes the favorite as well
+    private static final String SQL_CREATE_FAVORITES_TABLE = "CREATE TABLE IF NOT EXISTS " + FAVORITES_TABLE + "(" + FAVORITES_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + FAVORITES_KEY + " TEXT NOT NULL UNIQUE REFERENCES " + MAIN_TABLE + "(" + MAIN_KEY + ") ON DELETE CASCADE);";
+
+    // Define the SQL statements to create the indexes that are used by all lookups
+    // MAIN_KEY and FAVORITES_KEY need no index because their unique constraints already create one
+    private static final String SQL_CREATE_MAIN_NAME_INDEX = "CREATE INDEX IF NOT EXISTS " + MAIN_TABLE + "_" + MAIN_NAME + "_index ON " + MAIN_TABLE + "(" + MAIN_NAME + ");";
+
+    // Define the SQL statements to create the full-text index and the triggers that keep it in sync with the MAIN_TABLE
+    // The prefix option adds indexes for the first 2 and 3 characters of every word so searching as you type stays fast
+    private static final String SQL_CREATE_MAIN_SEARCH_TABLE = "CREATE VIRTUAL TABLE IF NOT EXISTS " + MAIN_SEARCH_TABLE + " USING fts4(content=\"" + MAIN_TABLE + "\", " + MAIN_NAME + ", prefix=\"2,3\");";
+    private static final String[] SQL_CREATE_MAIN_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS " + MAIN_SEARCH_TABLE + "_before_update BEFORE UPDATE ON " + MAIN_TABLE
+                    + " BEGIN DELETE FROM " + MAIN_SEARCH_TABLE + " WHERE docid = old." + MAIN_ID + "; END;",
+            "CREATE TRIGGER IF NOT EXISTS " + MAIN_SEARCH_TABLE + "_before_delete BEFORE DELETE ON " + MAIN_TABLE
+                    + " BEGIN DELETE FROM " + MAIN_SEARCH_TABLE + " WHERE docid = old." + MAIN_ID + "; END;",
+            "CREATE TRIGGER IF NOT EXISTS " + MAIN_SEARCH_TABLE + "_after_update AFTER UPDATE ON " + MAIN_TABLE
+                    + " BEGIN INSERT INTO " + MAIN_SEARCH_TABLE + "(docid, " + MAIN_NAME + ") VALUES (new." + MAIN_ID + ", new." + MAIN_NAME + "); END;",
+            "CREATE TRIGGER IF NOT EXISTS " + MAIN_SEARCH_TABLE + "_after_insert AFTER INSERT ON " + MAIN_TABLE
+                    + " BEGIN INSERT INTO " + MAIN_SEARCH_TABLE + "(docid, " + MAIN_NAME + ") VALUES (new." + MAIN_ID + ", new." + MAIN_NAME + "); END;"
+    };
+
+    // There is only one DatabaseHandler for the whole app so all activities share one open database connection
+    private static DatabaseHandler instance;
+
+    // Returns the DatabaseHandler of the app and creates it if it does not exist yet
+    public static synchronized DatabaseHandler getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new DatabaseHandler(context.getApplicationContext());
+        }
+
+        return instance;
+    }
 
     // Create a constructor to start an instance of DatabaseHandler that will create the database
-    public DatabaseHandler(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Use getInstance() to get the shared instance
+    private DatabaseHandler(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    // Opens a database with the given name instead of the one of the app, e.g. for the benchmarks
+    DatabaseHandler(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+
+        // Write-ahead logging lets the PagedSoundList and the SoundSearch read while the database is written
+        // The writers are the FavoritesWriter thread of the FavoritesStore and the SyncTask of the SoundboardActivity
+        setWriteAheadLoggingEnabled(true);
+
         Log.d(LOG_TAG, "Database successfully initialised: " + getDatabaseName());
     }
 
+    // Gets called every time the database is opened before it is created or upgraded
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+
+        // SQLite only checks the REFERENCES of FAVORITES_TABLE if foreign keys are enabled
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
 
         try{
             // Execute the creation statements
-            db.execSQL(SQL_CREATE_MAIN_TABLE);
-            db.execSQL(SQL_CREATE_FAVORITES_TABLE);
+            createTables(db);
 
         } catch(Exception e){
 
@@ -62,88 +125,209 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         }
     }
 
+    // Creates all tables and indexes if they don't exist yet
+    private void createTables(SQLiteDatabase db){
+
+        db.execSQL(SQL_CREATE_MAIN_TABLE);
+        db.execSQL(SQL_CREATE_FAVORITES_TABLE);
+        db.execSQL(SQL_CREATE_MAIN_NAME_INDEX);
+
+        createSearchTable(db);
+    }
+
+    // Creates the full-text index of the MAIN_TABLE and its triggers if they don't exist yet
+    private void createSearchTable(SQLiteDatabase db){
+
+        db.execSQL(SQL_CREATE_MAIN_SEARCH_TABLE);
+
+        for (String trigger : SQL_CREATE_MAIN_SEARCH_TRIGGERS){
+            db.execSQL(trigger);
+        }
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
-        // We are using the app version instead of the database version to upgrade the database, so this method is unnecessary
-        // If it gets called somehow it should only delete the main table that will be refilled again in the SoundboardActivity
-        db.execSQL("DROP TABLE IF EXISTS " + MAIN_TABLE);
-        onCreate(db);
-    }
+        // The content of the MAIN_TABLE is updated with the app version in the SoundboardActivity
+        // This method only migrates the structure of the database step by step
 
-    // Defining the sound buttons
-    public void createSoundCollection(Context context){
+        // Version 2 added indexes for all lookups
+        // Version 3 identifies sounds by their key instead of the resource id and replaces the indexes of version 2
+        if (oldVersion < 3){
+
+            // Keep the favorites until createSoundCollection() can match them with the new MAIN_TABLE by name
+            db.execSQL("ALTER TABLE " + FAVORITES_TABLE + " RENAME TO " + FAVORITES_LEGACY_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + MAIN_TABLE);
+
+            createTables(db);
+        }
 
-        // Get all entries of the name StringArray(soundNames) declared in strings.xml
-        List<String> nameList = Arrays.asList(context.getResources().getStringArray(R.array.soundNames));
+        // Version 4 added the full-text index of the sound names
+        if (oldVersion < 4){
 
-        // Declare all sound buttons
-        SoundObject[] soundItems = {new SoundObject(nameList.get(0), R.raw.audio01), new SoundObject(nameList.get(1), R.raw.audio02), new SoundObject(nameList.get(2), R.raw.audio03)};
+            createSearchTable(db);
 
-        // Call putIntoMain() for each SoundObject in soundItems to fill the MAIN_TABLE with all necessary information
-        for (SoundObject i: soundItems){
-            putIntoMain(i);
+            // Index all sounds that are already stored, the triggers only handle later changes
+            db.execSQL("INSERT INTO " + MAIN_SEARCH_TABLE + "(" + MAIN_SEARCH_TABLE + ") VALUES('rebuild')");
         }
     }
 
-    // Check if the sound id allready exists in the selected table
-    private boolean verification(SQLiteDatabase database, String tableName, String idRow, Integer soundId){
+    // Defining the sound buttons
+    // All sound buttons are declared in SoundCatalog which is generated from res/raw and sounds.txt at build time
+    // Returns false if the MAIN_TABLE could not be updated, it will be tried again on the next start in that case
+    public boolean createSoundCollection(){
 
-        int count = -1;
-        Cursor cursor = null;
+        SoundObject[] soundItems = new SoundObject[SoundCatalog.SIZE];
 
-        try {
+        for (int i = 0; i < SoundCatalog.SIZE; i++){
+            soundItems[i] = new SoundObject(SoundCatalog.NAMES[i], SoundCatalog.KEYS[i], SoundCatalog.IDS[i]);
+        }
 
-            // Get all rows from the selected table that contain the given sound id
-            String query = "SELECT * FROM " + tableName + " WHERE " + idRow + " = " + soundId;
-            cursor = database.rawQuery(query, null);
+        // Bring the MAIN_TABLE up to date with all necessary information
+        return syncMain(soundItems) != null;
+    }
 
-            // If the entry with the given sound id exists get the rows _id as count value
-            if (cursor.moveToFirst()){
+    // Summary of a syncMain() run
+    public static class CatalogSync {
 
-                count = cursor.getInt(0);
-            }
+        public final int added;
+        public final int removed;
+        public final int renamed;
 
-            // Return true if sound exists in the selected table
-            return (count > 0);
+        CatalogSync(int added, int removed, int renamed){
 
-        } finally {
+            this.added = added;
+            this.removed = removed;
+            this.renamed = renamed;
+        }
 
-            // close the cursor after the verification and if it is filled with something
-            if (cursor != null){
+        @Override
+        public String toString(){
 
-                cursor.close();
-            }
+            return added + " added, " + removed + " removed, " + renamed + " renamed";
         }
     }
 
-    // Add sounds to MAIN_TABLE
-    private void putIntoMain(SoundObject soundObject){
+    // Brings the MAIN_TABLE up to date with the sounds that are shipped with the app
+    // Only sounds that were added, removed or renamed are written, all changes are applied in one transaction
+    // If the app is killed in between nothing is applied and the next start does the whole sync again
+    // Returns null if the sync failed
+    private CatalogSync syncMain(SoundObject[] soundObjects){
+
+        long startTime = SystemClock.elapsedRealtime();
 
         // Get a writable instance of the database
         SQLiteDatabase database = this.getWritableDatabase();
 
-        // Check if the soundId allready exists in the table then add it to the table if it does not exist
-        if (!verification(database, MAIN_TABLE, MAIN_ITEM_ID, soundObject.getItemID()) ){
+        SQLiteStatement insert = database.compileStatement("INSERT INTO " + MAIN_TABLE + " (" + MAIN_KEY + ", " + MAIN_NAME + ") VALUES (?, ?)");
+        SQLiteStatement rename = database.compileStatement("UPDATE " + MAIN_TABLE + " SET " + MAIN_NAME + " = ? WHERE " + MAIN_KEY + " = ?");
+        // Removing a sound removes its favorite as well (ON DELETE CASCADE)
+        SQLiteStatement remove = database.compileStatement("DELETE FROM " + MAIN_TABLE + " WHERE " + MAIN_KEY + " = ?");
 
-            try {
+        CatalogSync sync = null;
 
-                // Put the information into a ContentValues object
-                ContentValues contentValues = new ContentValues();
+        database.beginTransaction();
 
-                contentValues.put(MAIN_NAME, soundObject.getItemName());
-                contentValues.put(MAIN_ITEM_ID, soundObject.getItemID());
+        try {
 
-                // Insert the SoundObject into the MAIN_TABLE
-                database.insert(MAIN_TABLE, null, contentValues);
-            } catch (Exception e){
+            // Read the stored catalog: key -> name
+            HashMap<String, String> stored = new HashMap<>();
+            Cursor cursor = database.rawQuery("SELECT " + MAIN_KEY + ", " + MAIN_NAME + " FROM " + MAIN_TABLE, null);
 
-                Log.e(LOG_TAG, "(MAIN) Failed to insert sound: " + e.getMessage());
+            try {
+
+                while (cursor.moveToNext()){
+                    stored.put(cursor.getString(0), cursor.getString(1));
+                }
             } finally {
 
-                database.close();
+                cursor.close();
+            }
+
+            int added = 0;
+            int renamed = 0;
+
+            for (SoundObject soundObject : soundObjects){
+
+                // Sounds that are left in stored after this loop are not shipped anymore
+                boolean exists = stored.containsKey(soundObject.getItemKey());
+                String storedName = stored.remove(soundObject.getItemKey());
+
+                if (!exists){
+
+                    insert.bindString(1, soundObject.getItemKey());
+                    insert.bindString(2, soundObject.getItemName());
+                    insert.executeInsert();
+                    added++;
+
+                } else if (!soundObject.getItemName().equals(storedName)){
+
+                    rename.bindString(1, soundObject.getItemName());
+                    rename.bindString(2, soundObject.getItemKey());
+                    rename.executeUpdateDelete();
+                    renamed++;
+                }
+            }
+
+            for (String soundKey : stored.keySet()){
+
+                remove.bindString(1, soundKey);
+                remove.executeUpdateDelete();
             }
+
+            migrateLegacyFavorites(database);
+
+            database.setTransactionSuccessful();
+
+            sync = new CatalogSync(added, stored.size(), renamed);
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "(MAIN) Failed to sync sounds: " + e.getMessage());
+        } finally {
+
+            database.endTransaction();
+            insert.close();
+            rename.close();
+            remove.close();
+        }
+
+        if (sync != null){
+
+            Log.i(LOG_TAG, "(MAIN) Synced " + soundObjects.length + " sounds (" + sync + ") in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        }
+
+        return sync;
+    }
+
+    // Moves the favorites of database version 2 and older into the FAVORITES_TABLE
+    // They are matched with the sounds by name because their resource ids may be outdated
+    private void migrateLegacyFavorites(SQLiteDatabase database){
+
+        Cursor cursor = database.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{FAVORITES_LEGACY_TABLE});
+
+        try {
+
+            if (!cursor.moveToFirst())
+                return;
+
+        } finally {
+
+            cursor.close();
         }
+
+        database.execSQL("INSERT OR IGNORE INTO " + FAVORITES_TABLE + " (" + FAVORITES_KEY + ")"
+                + " SELECT " + MAIN_TABLE + "." + MAIN_KEY + " FROM " + FAVORITES_LEGACY_TABLE
+                + " JOIN " + MAIN_TABLE + " ON " + MAIN_TABLE + "." + MAIN_NAME + " = " + FAVORITES_LEGACY_TABLE + "." + FAVORITES_LEGACY_NAME);
+        database.execSQL("DROP TABLE " + FAVORITES_LEGACY_TABLE);
+
+        Log.i(LOG_TAG, "(FAVORITES) Migrated favorites to sound keys");
+    }
+
+    // Returns true if the MAIN_TABLE has no sounds, e.g. after the database structure has been upgraded
+    public boolean isSoundCollectionEmpty(){
+
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), MAIN_TABLE) == 0;
     }
 
     // Returns a Cursor with all entries of the MAIN_TABLE
@@ -156,164 +340,192 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         return database.rawQuery("SELECT * FROM " + MAIN_TABLE + " ORDER BY " + MAIN_NAME, null);
     }
 
-    // Add a sound to favorites / FAVORITES_TABLE
-    public void addFavorite(SoundObject soundObject){
+    // Returns the number of sounds in the MAIN_TABLE
+    public int getSoundCount(){
 
-        // Get a writable instance of the database
-        SQLiteDatabase database = this.getWritableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(this.getReadableDatabase(), MAIN_TABLE);
+    }
 
-        // Check if the soundId allready exists in the table then add it to the table if it does not exist
-        if (!verification(database, FAVORITES_TABLE, FAVORITES_ITEM_ID, soundObject.getItemID()) ) {
+    // Returns a Cursor with limit entries of the MAIN_TABLE starting at position offset
+    // The order is the same as in getSoundCollection(), the _id decides between sounds with the same name
+    // so pages never overlap (_id is part of the name index, no extra sorting is needed)
+    // SQLite steps over all rows before offset, use getSoundCollectionAfter() if the sound before the page is known
+    public Cursor getSoundCollection(int offset, int limit){
 
-            try{
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-                // Put the information into a ContentValues object
-                ContentValues contentValues = new ContentValues();
+        return database.rawQuery("SELECT * FROM " + MAIN_TABLE + " ORDER BY " + MAIN_NAME + ", " + MAIN_ID
+                + " LIMIT " + limit + " OFFSET " + offset, null);
+    }
 
-                contentValues.put(FAVORITES_NAME, soundObject.getItemName());
-                contentValues.put(FAVORITES_ITEM_ID, soundObject.getItemID());
+    // Returns a Cursor with limit entries of the MAIN_TABLE that come after the sound with the given name and _id
+    // The order is the same as in getSoundCollection(int, int), SQLite finds the first row in the name index
+    // so reading a page takes the same time at the end of the table as at its start
+    // Pass null as name to start with the first sound
+    public Cursor getSoundCollectionAfter(String name, long id, int limit){
 
-                // Insert the SoundObject into the FAVORITES_TABLE
-                database.insert(FAVORITES_TABLE, null, contentValues);
-            } catch (Exception e){
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-                Log.e(LOG_TAG, "(FAVORITES) Failed to insert sound: " + e.getMessage());
-            } finally {
+        if (name == null)
+            return database.rawQuery("SELECT * FROM " + MAIN_TABLE + " ORDER BY " + MAIN_NAME + ", " + MAIN_ID + " LIMIT " + limit, null);
 
-                database.close();
-            }
-        }
+        // (soundName, _id) > (?, ?) written out, Android 4.2 ships an SQLite without row values
+        // The first condition lets SQLite start the index scan at the name
+        return database.rawQuery("SELECT * FROM " + MAIN_TABLE
+                + " WHERE " + MAIN_NAME + " >= ? AND (" + MAIN_NAME + " > ? OR " + MAIN_ID + " > " + id + ")"
+                + " ORDER BY " + MAIN_NAME + ", " + MAIN_ID + " LIMIT " + limit, new String[]{name, name});
     }
 
-    // Remove a sound from favorites / FAVORITES_TABLE
-    public void removeFavorite(Context context, SoundObject soundObject){
+    // Returns a Cursor with limit entries of the MAIN_TABLE that come before the sound with the given name and _id
+    // The rows are in reverse order, the last sound before the given one comes first
+    public Cursor getSoundCollectionBefore(String name, long id, int limit){
 
-        // Get a writable instance of the database
-        SQLiteDatabase database = this.getWritableDatabase();
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-        // Check if the soundId allready exists in the table then remove it from the table if it exists
-        if (verification(database, FAVORITES_TABLE, FAVORITES_ITEM_ID, soundObject.getItemID()) ) {
+        return database.rawQuery("SELECT * FROM " + MAIN_TABLE
+                + " WHERE " + MAIN_NAME + " <= ? AND (" + MAIN_NAME + " < ? OR " + MAIN_ID + " < " + id + ")"
+                + " ORDER BY " + MAIN_NAME + " DESC, " + MAIN_ID + " DESC LIMIT " + limit, new String[]{name, name});
+    }
 
-            try {
+    // Returns a Cursor with the name and _id of all sounds in the order of getSoundCollection(int, int)
+    // Only the name index is read, it is used to find where the pages of a PagedSoundList start
+    public Cursor getSoundOrder(){
 
-                // Remove entry from database table
-                database.delete(FAVORITES_TABLE, FAVORITES_ITEM_ID + " = " + soundObject.getItemID(), null);
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-                // Restart the activity to display changes
-                Activity activity = (Activity) context;
-                Intent intent = activity.getIntent();
-                // Disable activity transitioning animations
-                activity.overridePendingTransition(0,0);
-                intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION);
-                activity.finish();
-                activity.overridePendingTransition(0,0);
-                context.startActivity(intent);
+        return database.rawQuery("SELECT " + MAIN_NAME + ", " + MAIN_ID + " FROM " + MAIN_TABLE
+                + " ORDER BY " + MAIN_NAME + ", " + MAIN_ID, null);
+    }
 
-            } catch (Exception e){
+    // Returns the keys of all favorite sounds
+    public HashSet<String> getFavoriteKeys(){
 
-                Log.e(LOG_TAG, "(FAVORITES) Failed to remove sound: " + e.getMessage());
-            } finally {
+        HashSet<String> favoriteKeys = new HashSet<>();
 
-                database.close();
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
+
+        Cursor cursor = database.rawQuery("SELECT " + FAVORITES_KEY + " FROM " + FAVORITES_TABLE, null);
+
+        try {
+
+            while (cursor.moveToNext()){
+                favoriteKeys.add(cursor.getString(0));
             }
-        }
-    }
+        } catch (Exception e){
 
-    // Returns a Cursor with all entries of the FAVORITES_TABLE
-    // Cursor will be closed after SoundObjects were added to the ArrayList in SoundboardActivity
-    public Cursor getFavorites(){
+            Log.e(LOG_TAG, "(FAVORITES) Failed to read favorites: " + e.getMessage());
+        } finally {
 
-        // Get a readable instance of the database
-        SQLiteDatabase database = this.getReadableDatabase();
+            cursor.close();
+        }
 
-        return database.rawQuery("SELECT * FROM " + FAVORITES_TABLE + " ORDER BY " + FAVORITES_NAME, null);
+        return favoriteKeys;
     }
 
-    // When adding sounds to the soundboard and updating the resource ids might change
-    // This method will update the resource ids in the FAVORITES_TABLE
-    public void updateFavorites(){
+    // Adds and removes favorites in one transaction
+    // changes : key -> true to add the sound to the FAVORITES_TABLE, false to remove it
+    // Returns false if nothing could be written
+    public boolean updateFavorites(Map<String, Boolean> changes){
 
         // Get a writable instance of the database
         SQLiteDatabase database = this.getWritableDatabase();
 
-        try {
+        // Sounds that already are favorites and sounds that are not in the MAIN_TABLE (anymore) are ignored
+        SQLiteStatement insert = database.compileStatement("INSERT OR IGNORE INTO " + FAVORITES_TABLE + " (" + FAVORITES_KEY + ")"
+                + " SELECT " + MAIN_KEY + " FROM " + MAIN_TABLE + " WHERE " + MAIN_KEY + " = ?");
+        SQLiteStatement remove = database.compileStatement("DELETE FROM " + FAVORITES_TABLE + " WHERE " + FAVORITES_KEY + " = ?");
 
-            // Get all data from the FAVORITES_TABLE
-            Cursor favorite_content = database.rawQuery("SELECT * FROM " + FAVORITES_TABLE, null);
+        boolean success = false;
 
-            // Check if the cursor is empty or failed to convert the data
-            if (favorite_content.getCount() == 0){
+        database.beginTransaction();
 
-                Log.d(LOG_TAG, "Cursor is empty or failed to convert data");
-                favorite_content.close();
-            }
+        try {
 
+            for (Map.Entry<String, Boolean> change : changes.entrySet()){
 
-            while (favorite_content.moveToNext()){
+                SQLiteStatement statement = change.getValue() ? insert : remove;
 
-                // Set a String that will contain the name of the current sound
-                String entryName = favorite_content.getString(favorite_content.getColumnIndex(FAVORITES_NAME));
+                statement.bindString(1, change.getKey());
+                statement.executeUpdateDelete();
+            }
 
-                // Get the entry of MAIN_TABLE where the name of the current favorite sound appears
-                Cursor updateEntry = database.rawQuery("SELECT * FROM " + MAIN_TABLE + " WHERE " + MAIN_NAME + " = '" + entryName + "'", null);
+            database.setTransactionSuccessful();
+            success = true;
 
-                // You can log the name of the sound that is in the update order right now for debug reasons
-                //Log.d(LOG_TAG, "Currently working on: " + entryName);
+        } catch (Exception e){
 
-                // Check if the cursor is empty or failed to convert the data
-                if (updateEntry.getCount() == 0){
+            Log.e(LOG_TAG, "(FAVORITES) Failed to update favorites: " + e.getMessage());
+        } finally {
 
-                    Log.d(LOG_TAG, "Cursor is empty or failed to convert data");
-                    updateEntry.close();
-                }
+            database.endTransaction();
+            insert.close();
+            remove.close();
+        }
 
-                // Move to the cursors first position (should only have 1 position)
-                updateEntry.moveToFirst();
+        return success;
+    }
 
-                // Check if the resource ids match and update the favorite resource id if necessary
-                if (favorite_content.getInt(favorite_content.getColumnIndex(FAVORITES_ITEM_ID)) != updateEntry.getInt(updateEntry.getColumnIndex(MAIN_ITEM_ID)) ){
+    // Returns a Cursor with all favorite sounds and the same columns as getSoundCollection()
+    // Cursor will be closed after SoundObjects were added to the ArrayList in FavoriteActivity
+    public Cursor getFavorites(){
 
-                    ContentValues contentValues = new ContentValues();
-                    contentValues.put(FAVORITES_ITEM_ID, updateEntry.getInt(updateEntry.getColumnIndex(MAIN_ITEM_ID)));
-                    database.update(FAVORITES_TABLE, contentValues, FAVORITES_NAME + " = '" + entryName + "'", null);
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-                    // You can log the name of the sound that has been updated for debug reasons
-                    //Log.d(LOG_TAG, "Updated sound: " + entryName);
-                }
-                // You can log the name of the sound if it is allready up to date for debug reasons
-                //else {
-                //
-                //    Log.d(LOG_TAG, "Allready up to date: " + entryName);
-                //}
-            }
+        return database.rawQuery("SELECT " + MAIN_TABLE + ".* FROM " + FAVORITES_TABLE
+                + " JOIN " + MAIN_TABLE + " ON " + MAIN_TABLE + "." + MAIN_KEY + " = " + FAVORITES_TABLE + "." + FAVORITES_KEY
+                + " ORDER BY " + MAIN_TABLE + "." + MAIN_NAME, null);
+    }
 
+    // Returns a Cursor with up to limit sounds whose name contains words that start with the words of the query
+    // The order and columns are the same as in getSoundCollection()
+    // The query can be stopped with the CancellationSignal, the Cursor methods throw an OperationCanceledException then
+    public Cursor searchSounds(String query, int limit, CancellationSignal cancellationSignal){
 
-        } catch (Exception e) {
+        String matchQuery = toMatchQuery(query);
 
-            Log.e(LOG_TAG, "Failed to update favorites: " + e.getMessage());
-        } finally {
+        // Get a readable instance of the database
+        SQLiteDatabase database = this.getReadableDatabase();
 
-            database.close();
-        }
+        // Nothing to search for, the Cursor is empty but has the same columns
+        return database.rawQuery("SELECT " + MAIN_TABLE + ".* FROM " + MAIN_SEARCH_TABLE
+                + " JOIN " + MAIN_TABLE + " ON " + MAIN_TABLE + "." + MAIN_ID + " = " + MAIN_SEARCH_TABLE + ".docid"
+                + " WHERE " + (matchQuery != null ? MAIN_SEARCH_TABLE + " MATCH ?" : "0")
+                + " ORDER BY " + MAIN_TABLE + "." + MAIN_NAME + ", " + MAIN_TABLE + "." + MAIN_ID
+                + " LIMIT " + limit, matchQuery != null ? new String[]{matchQuery} : null, cancellationSignal);
     }
 
-    // Gets called when app is updated and recreates the MAIN_TABLE
-    public void appUpdate(){
+    // Turns the text the user typed into a full-text query that matches every word as prefix
+    // e.g. Air Ho -> air* ho*
+    // Returns null if the text contains no word
+    static String toMatchQuery(String text){
 
-        try {
+        StringBuilder matchQuery = new StringBuilder();
 
-            SQLiteDatabase database = this.getWritableDatabase();
+        // Everything that is no letter or digit separates words, so the query can't contain any FTS syntax
+        for (String word : text.split("[^\\p{L}\\p{N}]+")){
 
-            database.execSQL("DROP TABLE IF EXISTS " + MAIN_TABLE);
+            if (word.isEmpty())
+                continue;
 
-            database.execSQL(SQL_CREATE_MAIN_TABLE);
+            if (matchQuery.length() > 0)
+                matchQuery.append(' ');
 
-            database.close();
+            // The index only folds the case of ASCII letters, the lower case also keeps AND, OR and NOT from being operators
+            for (int i = 0; i < word.length(); i++){
 
-        } catch (Exception e) {
+                char c = word.charAt(i);
+                matchQuery.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            }
 
-            Log.e(LOG_TAG, "Failed to update the main table on app update: " + e.getMessage());
+            matchQuery.append('*');
         }
-    }
 
+        return matchQuery.length() > 0 ? matchQuery.toString() : null;
+    }
 }
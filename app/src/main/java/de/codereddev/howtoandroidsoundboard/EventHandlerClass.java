@@ -1,39 +1,82 @@
 package de.codereddev.howtoandroidsoundboard;
 
+import android.Manifest;
+import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.media.MediaPlayer;
+import android.content.pm.PackageManager;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.Build;
-import android.os.Environment;
-import android.provider.MediaStore;
-import android.support.v4.content.FileProvider;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.PopupMenu;
+import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.List;
 
 public class EventHandlerClass {
 
     // Define a tag that is used to log any kind of error or comment
     private static final String LOG_TAG = "EVENTHANDLER";
 
-    // Declare a MediaPlayer to be used by the app
-    private static MediaPlayer mp;
+    // Declare the SoundEngine that plays all sounds of the app
+    // It keeps short sounds decoded in memory so a tap does not have to create and prepare a new MediaPlayer
+    // All commands are handed over to an AudioThread so the UI thread never waits for the engine
+    private static AudioThread soundEngine;
 
-    // Declare a DatabaseHandler to support database usage
-    private static DatabaseHandler databaseHandler;
+    // Counts the activities that use the SoundEngine, it is only released when the last one is destroyed
+    // So the preloaded sounds of the main grid stay in memory while the user looks at the favorites
+    private static int soundEngineUsers;
 
-    // Creates and starts a MediaPlayer instance to play a sound
+    // Registers an activity as user of the SoundEngine, call it in onCreate()
+    public static void acquireSoundEngine(){
+
+        soundEngineUsers++;
+    }
+
+    // Unregisters an activity as user of the SoundEngine, call it in onDestroy()
+    // The SoundEngine is released when no activity uses it anymore
+    public static void releaseSoundEngine(){
+
+        if (soundEngineUsers > 0){
+
+            soundEngineUsers--;
+        }
+
+        if (soundEngineUsers == 0){
+
+            releaseMediaPlayer();
+        }
+    }
+
+    // Replaces the SoundEngine that is used by startMediaPlayer()
+    // The old engine will be released
+    public static void setSoundEngine(SoundEngine engine){
+
+        releaseMediaPlayer();
+        soundEngine = new AudioThread(engine);
+    }
+
+    // Returns the current SoundEngine and creates the default one if there is none
+    // Every call on the returned engine only puts a command into the queue of the AudioThread
+    public static SoundEngine getSoundEngine(Context context){
+
+        if (soundEngine == null){
+
+            soundEngine = new AudioThread(new SoundPoolEngine(context));
+        }
+
+        return soundEngine;
+    }
+
+    // Plays a sound with the SoundEngine
     public static void startMediaPlayer(View view, Integer soundID){
 
         try {
@@ -41,16 +84,7 @@ public class EventHandlerClass {
             // Check if the sound id was set correctly
             if (soundID != null){
 
-                // Check if the MediaPlayer maybe is in use
-                // If so the MediaPlayer will be reset
-                if (mp != null){
-
-                    mp.reset();
-                }
-
-                // Create and start the MediaPlayer on the given sound id
-                mp = MediaPlayer.create(view.getContext(), soundID);
-                mp.start();
+                getSoundEngine(view.getContext()).play(soundID);
             }
         } catch (Exception e){
 
@@ -59,241 +93,220 @@ public class EventHandlerClass {
         }
     }
 
-    // Releases all data from the MediaPlayer
+    // Releases all data from the SoundEngine right away, even if activities still use it
+    // Activities should call releaseSoundEngine() instead
     public static void releaseMediaPlayer(){
 
-        if (mp != null){
+        if (soundEngine != null){
 
-            mp.release();
-            mp = null;
+            soundEngine.release();
+            soundEngine = null;
         }
     }
 
     // Creates a PopupMenu at the pressed sound button and handles the users input
-    public static void popupManager(final View view, final SoundObject soundObject){
+    // adapter : The adapter of the sound button, the user can select several sounds in it if it has a SelectionListener
+    public static void popupManager(final View view, final SoundObject soundObject, final SoundboardRecyclerAdapter adapter){
 
-        // Assign the DatabaseHandler
-        databaseHandler = new DatabaseHandler(view.getContext());
+        // Define the context the PopupMenu was opened in
+        final Context context = view.getContext();
+
+        // Get the FavoritesStore that knows which sounds are favorites
+        final FavoritesStore favoritesStore = FavoritesStore.getInstance(context);
 
         // Declare PopupMenu and assign it to the design created in longclick.xml
         PopupMenu popup = new PopupMenu(view.getContext(), view);
 
-        // Identify the current activity and inflate the right popup menu
-        if (view.getContext() instanceof FavoriteActivity)
+        // Inflate the popup menu that matches the favorite state of the sound
+        if (favoritesStore.isFavorite(soundObject.getItemKey()))
             popup.getMenuInflater().inflate(R.menu.favo_longclick, popup.getMenu());
         else
             popup.getMenuInflater().inflate(R.menu.longclick, popup.getMenu());
 
+        // Only offer to select sounds if the adapter supports it
+        if (adapter == null || !adapter.isSelectionEnabled())
+            popup.getMenu().removeItem(R.id.action_select);
+
+        // The favorite state is not known before the favorites have been read, so the item could offer the wrong action
+        MenuItem favoriteItem = popup.getMenu().findItem(R.id.action_favorite);
+        if (favoriteItem != null && !favoritesStore.isLoaded())
+            favoriteItem.setEnabled(false);
+
         // Handle user clicks on the popupmenu
         popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
             @Override
             public boolean onMenuItemClick(MenuItem item) {
 
-                // Check if the user wants to share a sound or set a sound as system audio
-                if (item.getItemId() == R.id.action_send || item.getItemId() == R.id.action_ringtone){
+                // Send a sound via WhatsApp or the like
+                // The other app reads the sound from the SoundProvider, nothing is written to the storage
+                if (item.getItemId() == R.id.action_send){
 
-                    // Define a filename on the given information from the SoundObject AND add the .mp3 tag to it
-                    final String fileName = soundObject.getItemName() + ".mp3";
+                    shareSound(context, soundObject);
+                }
 
-                    // Get the path to the users external storage
-                    File storage = Environment.getExternalStorageDirectory();
-                    // Define the directory path to the soundboard apps folder
-                    // Change my_soundboard to whatever you want as your folder but keep the slash
-                    // TODO: When changing the path be sure to also modify the path in filepaths.xml (res/xml/filepaths.xml)
-                    File directory = new File(storage.getAbsolutePath() + "/my_soundboard/");
-                    // Creates the directory if it doesn't exist
-                    // mkdirs() gives back a boolean. You can use it to do some processes as well but we don't really need it.
-                    directory.mkdirs();
+                // Check if the user wants to set a sound as system audio
+                if (item.getItemId() == R.id.action_ringtone){
 
-                    // Finally define the file by giving over the directory and the filename
-                    final File file = new File(directory, fileName);
+                    // The MediaStore only registers ringtones if the app may write the external storage
+                    // Since Android 6 the permission is requested the first time a sound is set as system audio
+                    if (ContextCompat.checkSelfPermission(context, Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED){
 
-                    // Define an InputStream that will read the data from your sound-raw.mp3 file into a buffer
-                    InputStream in = view.getContext().getResources().openRawResource(soundObject.getItemID());
+                        if (context instanceof Activity){
 
-                    try{
+                            ActivityCompat.requestPermissions((Activity) context, new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, 0);
+                        }
+                        return true;
+                    }
 
-                        // Log the name of the sound that is being saved
-                        Log.i(LOG_TAG, "Saving sound " + soundObject.getItemName());
+                    // The system needs a real file for ringtones, alarms and notifications
+                    // The ExportCache saves every sound only once in the ringtones folder of the app and reuses the file afterwards
+                    // The callback only references the activity weakly, it may be closed before the sound is saved
+                    final WeakReference<Context> activityReference = new WeakReference<>(context);
+                    final Context applicationContext = context.getApplicationContext();
 
-                        // Define an OutputStream/FileOutputStream that will write the buffer data into the sound.mp3 on the external storage
-                        OutputStream out = new FileOutputStream(file);
-                        // Define a buffer of 1kb (you can make it a little bit bigger but 1kb will be adequate)
-                        byte[] buffer = new byte[1024];
+                    ExportCache.getInstance(context).export(context, soundObject, new SoundExporter.Callback() {
+                        @Override
+                        public void onExportFinished(File file) {
 
-                        int len;
-                        // Write the data to the sound.mp3 file while reading it from the sound-raw.mp3
-                        // if (int) InputStream.read() returns -1 stream is at the end of file
-                        while ((len = in.read(buffer, 0, buffer.length)) != -1){
-                            out.write(buffer, 0 , len);
+                            // Save as ringtone, alarm or notification
+                            chooseSystemAudio(activityReference.get(), soundObject, file);
                         }
 
-                        // Close both streams
-                        in.close();
-                        out.close();
+                        @Override
+                        public void onExportFailed(File file) {
 
-                    } catch (IOException e){
+                            Toast.makeText(applicationContext, "Failed to save " + soundObject.getItemName(), Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
 
-                        // Log error if process failed
-                        Log.e(LOG_TAG, "Failed to save file: " + e.getMessage());
-                    }
+                // Start selecting several sounds, the following clicks select sounds instead of playing them
+                if (item.getItemId() == R.id.action_select){
 
-                    // Send a sound via WhatsApp or the like
-                    if (item.getItemId() == R.id.action_send){
+                    adapter.startSelection(soundObject);
+                }
+
+                // Add sound to favorites / Remove sound from favorites
+                if (item.getItemId() == R.id.action_favorite && favoritesStore.isLoaded()) {
 
-                        try{
+                    // The change is written to the database in the background
+                    // The activities observe the favorites and update the sound buttons themselves
+                    if (favoritesStore.isFavorite(soundObject.getItemKey())) {
+                        favoritesStore.removeFavorite(soundObject);
+                    } else {
+                        favoritesStore.addFavorite(soundObject);
+                    }
+                }
 
-                            // Check if the users device Android version is 5.1 or higher
-                            // If it is you'll have to use FileProvider to get the sharing function to work properly
-                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1){
+                return true;
+            }
+        });
 
-                                final String AUTHORITY = view.getContext().getPackageName() + ".fileprovider";
+        popup.show();
+    }
 
-                                Uri contentUri = FileProvider.getUriForFile(view.getContext(), AUTHORITY, file);
+    // Opens a chooser dialog to share a sound via WhatsApp or the like
+    private static void shareSound(Context context, SoundObject soundObject){
 
-                                final Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        try{
 
-                                final Intent intent = new Intent(Intent.ACTION_SEND);
-                                intent.putExtra(Intent.EXTRA_STREAM, contentUri);
-                                // Define the intent to be of type audio/mp3
-                                intent.setType("audio/mp3");
-                                // Start a new chooser dialog where the user can choose an app to share the sound
-                                view.getContext().startActivity(Intent.createChooser(intent, "Share sound via..."));
-                            }
-                            else {
-                                final Intent intent = new Intent(Intent.ACTION_SEND);
+            // The uri of the SoundProvider streams the sound straight from the app
+            Uri contentUri = SoundProvider.getUri(context, soundObject);
 
-                                // Uri refers to a name or location
-                                // .parse() analyzes a given uri string and creates a Uri from it
+            final Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.putExtra(Intent.EXTRA_STREAM, contentUri);
+            // Define the intent to be of the type of the sound, e.g. audio/mpeg
+            intent.setType(context.getContentResolver().getType(contentUri));
+            // The SoundProvider is not exported, so the chosen app needs the permission to read this uri
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            // Start a new chooser dialog where the user can choose an app to share the sound
+            context.startActivity(Intent.createChooser(intent, "Share sound via..."));
 
-                                // Define a "link" (Uri) to the saved file
-                                Uri fileUri = Uri.parse(file.getAbsolutePath());
-                                intent.putExtra(Intent.EXTRA_STREAM, fileUri);
-                                // Define the intent to be of type audio/mp3
-                                intent.setType("audio/mp3");
-                                // Start a new chooser dialog where the user can choose an app to share the sound
-                                view.getContext().startActivity(Intent.createChooser(intent, "Share sound via..."));
-                            }
+        } catch (Exception e){
 
-                        } catch (Exception e){
+            // Log error if process failed
+            Log.e(LOG_TAG, "Failed to share sound: " + e.getMessage());
+        }
+    }
 
-                            // Log error if process failed
-                            Log.e(LOG_TAG, "Failed to share sound: " + e.getMessage());
-                        }
-                    }
+    // Opens a chooser dialog to share several sounds at once
+    // The sounds are sent as one ZIP archive that the SoundProvider writes while the other app reads it
+    public static void shareSounds(Context context, List<SoundObject> soundObjects){
 
-                    // Save as ringtone, alarm or notification
-                    if (item.getItemId() == R.id.action_ringtone) {
-
-                        // Create a little popup like dialog that gives the user the choice between the 3 types
-                        // THEME_HOLO_LIGHT was deprecated in API 23 but to support older APIs you should use it
-                        AlertDialog.Builder builder = new AlertDialog.Builder(view.getContext(), AlertDialog.THEME_HOLO_LIGHT);
-                        builder.setTitle("Save as...");
-                        builder.setItems(new CharSequence[]{"Ringtone", "Notification", "Alarm"}, new DialogInterface.OnClickListener(){
-
-                            @Override
-                            public void onClick(DialogInterface dialog, int which){
-
-                                // Decide on the users choice which information will be send to a method that handles the settings for all kinds of system audio
-                                switch (which) {
-
-                                    // Ringtone
-                                    case 0:
-                                        changeSystemAudio(context, RingtoneManager.TYPE_RINGTONE, file);
-                                        break;
-                                    // Notification
-                                    case 1:
-                                        changeSystemAudio(context, RingtoneManager.TYPE_NOTIFICATION, file);
-                                        break;
-                                    // Alarmton
-                                    case 2:
-                                        changeSystemAudio(context, RingtoneManager.TYPE_ALARM, file);
-                                        break;
-                                    default:
-                                }
-                            }
-                        });
-                        builder.create();
-                        builder.show();
-                    }
+        if (soundObjects.isEmpty())
+            return;
 
-                }
+        if (soundObjects.size() == 1){
 
-                // Add sound to favorites / Remove sound from favorites
-                if (item.getItemId() == R.id.action_favorite) {
+            shareSound(context, soundObjects.get(0));
+            return;
+        }
 
-                    DatabaseHandler databaseHandler = DatabaseHandler
-                            .getInstance(context.getApplicationContext());
+        try{
 
-                    // Identify the current activity
-                    if (context instanceof FavoriteActivity) {
-                        databaseHandler.removeFavorite(context, soundObject);
-                    } else {
-                        databaseHandler.addFavorite(soundObject);
-                    }
-                }
+            Uri contentUri = SoundProvider.getArchiveUri(context, soundObjects, context.getString(R.string.app_name));
 
-                return true;
-            }
-        });
+            final Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.putExtra(Intent.EXTRA_STREAM, contentUri);
+            // Define the intent to be of type application/zip
+            intent.setType(context.getContentResolver().getType(contentUri));
+            // The SoundProvider is not exported, so the chosen app needs the permission to read this uri
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            // Start a new chooser dialog where the user can choose an app to share the sounds
+            context.startActivity(Intent.createChooser(intent, "Share sounds via..."));
 
-        popup.show();
-    }
+        } catch (Exception e){
 
-    private static void changeSystemAudio(Context context, int type, File file) {
-
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
-        values.put(MediaStore.MediaColumns.TITLE, file.getName());
-        values.put(MediaStore.MediaColumns.MIME_TYPE, "audio/mp3");
-        values.put(MediaStore.Audio.Media.ARTIST, "HandOfBlood");
-        values.put(MediaStore.Audio.Media.IS_RINGTONE, true);
-        values.put(MediaStore.Audio.Media.IS_NOTIFICATION, true);
-        values.put(MediaStore.Audio.Media.IS_ALARM, true);
-        values.put(MediaStore.Audio.Media.IS_MUSIC, false);
-        values.put(MediaStore.Audio.Media.IS_PODCAST, false);
-
-        final Uri baseUri = MediaStore.Audio.Media.getContentUriForPath(file.getAbsolutePath());
-        Uri toneUri = getUriForExistingTone(context, baseUri, file.getAbsolutePath());
-        if (toneUri == null) {
-            toneUri = context.getContentResolver().insert(baseUri, values);
+            // Log error if process failed
+            Log.e(LOG_TAG, "Failed to share sounds: " + e.getMessage());
         }
-        RingtoneManager.setActualDefaultRingtoneUri(context, type, toneUri);
     }
 
-    /**
-     * Calculates a URI for an existing tone.
-     *
-     * @param context Context of the current activity.
-     * @param uri Base URI to the tone.
-     * @param filePath Path of the file that is linked to the tone.
-     * @return The URI of the existing tone or null if it does not exist.
-     */
-    private static Uri getUriForExistingTone(Context context, Uri uri, String filePath) {
-
-        Cursor cursor = null;
-        try {
+    // Lets the user choose which system audio is set to the saved sound
+    private static void chooseSystemAudio(final Context context, final SoundObject soundObject, final File file){
 
-            cursor = context.getContentResolver()
-                    .query(uri,
-                            new String[] {MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA},
-                            MediaStore.MediaColumns.DATA + " = ?",
-                            new String[] {filePath},
-                            null, null);
+        // The activity may have been closed while the sound was saved
+        if (!SoundExporter.canShowDialog(context))
+            return;
 
-            if (cursor != null && cursor.getCount() != 0) {
+        // Create a little popup like dialog that gives the user the choice between the 3 types
+        // THEME_HOLO_LIGHT was deprecated in API 23 but to support older APIs you should use it
+        AlertDialog.Builder builder = new AlertDialog.Builder(context, AlertDialog.THEME_HOLO_LIGHT);
+        builder.setTitle("Save as...");
+        builder.setItems(new CharSequence[]{"Ringtone", "Notification", "Alarm"}, new DialogInterface.OnClickListener(){
 
-                cursor.moveToFirst();
-                int mediaPos = cursor.getInt(cursor.getColumnIndex(MediaStore.MediaColumns._ID));
-                return Uri.parse(uri.toString() + "/" + mediaPos);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+            @Override
+            public void onClick(DialogInterface dialog, int which){
+
+                // Decide on the users choice which information will be send to a method that handles the settings for all kinds of system audio
+                switch (which) {
+
+                    // Ringtone
+                    case 0:
+                        changeSystemAudio(context, RingtoneManager.TYPE_RINGTONE, soundObject, file);
+                        break;
+                    // Notification
+                    case 1:
+                        changeSystemAudio(context, RingtoneManager.TYPE_NOTIFICATION, soundObject, file);
+                        break;
+                    // Alarmton
+                    case 2:
+                        changeSystemAudio(context, RingtoneManager.TYPE_ALARM, soundObject, file);
+                        break;
+                    default:
+                }
             }
+        });
+        builder.create();
+        builder.show();
+    }
+
+    private static void changeSystemAudio(Context context, int type, SoundObject soundObject, File file) {
+
+        // The ToneRegistry remembers the MediaStore uri of the file, so only the first assignment has to ask the MediaStore
+        if (!ToneRegistry.getInstance(context).assign(type, file, soundObject.getItemName())){
+
+            Toast.makeText(context, "Failed to set " + soundObject.getItemName(), Toast.LENGTH_SHORT).show();
         }
-        return null;
     }
 }
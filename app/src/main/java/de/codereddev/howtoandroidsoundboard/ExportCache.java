@@ -0,0 +1,420 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps the sounds that have to exist as real files, e.g. to set them as ringtone, in the ringtones folder of the app
+// Every file is named after the SHA-1 hash of the sound in the SoundCatalog (e.g. 3f786850e387550fdab836ed7e6dc881de23001b.mp3)
+// so a sound that is already saved is reused without any I/O and a changed sound gets a new file
+// The files may use BuildConfig.EXPORT_CACHE_SIZE bytes, the least recently used files are deleted first
+// Files of sounds that are not in the SoundCatalog anymore are deleted in the background when the cache is created
+// Files that are set as ringtone, notification or alarm are never deleted
+// The MediaStore uris of the files are kept by the ToneRegistry
+public class ExportCache {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "EXPORTCACHE";
+
+    // There is only one ExportCache for the whole app
+    private static ExportCache instance;
+
+    // Returns the ExportCache of the app and creates it if it does not exist yet
+    public static synchronized ExportCache getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new ExportCache(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private final Context context;
+
+    // Maps the keys of the SoundCatalog to the hashes of their sounds
+    private final HashMap<String, String> soundHashes = new HashMap<>();
+
+    // Maps the hashes of the SoundCatalog to the names of their sounds
+    private final HashMap<String, String> soundNames = new HashMap<>();
+
+    // Maps the names of all saved files to their size, the least recently used file comes first
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    private File directory;
+    private boolean indexed;
+    private long size;
+    private long maxSize = BuildConfig.EXPORT_CACHE_SIZE;
+
+    // Count how often a saved file could be reused
+    private int hitCount;
+    private int missCount;
+
+    private ExportCache(Context context){
+
+        this.context = context;
+
+        for (int i = 0; i < SoundCatalog.SIZE; i++){
+            soundHashes.put(SoundCatalog.KEYS[i], SoundCatalog.HASHES[i]);
+            soundNames.put(SoundCatalog.HASHES[i], SoundCatalog.NAMES[i]);
+        }
+
+        // Read the saved files and delete the stale ones on the export thread, so no file is deleted while it is written
+        SoundExporter.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+
+                index();
+            }
+        });
+    }
+
+    // Hands the file of a sound to the callback, the sound is only copied if it has not been saved before
+    // context : The context of the activity, a progress dialog is shown in it if the copy takes a while
+    // Has to be called on the UI thread, the callback is called on the UI thread as well
+    public void export(Context context, SoundObject soundObject, final SoundExporter.Callback callback){
+
+        final String fileName = getFileName(soundObject);
+
+        synchronized (this){
+
+            // The access order of the files is updated by get()
+            Long length = indexed && directory != null ? files.get(fileName) : null;
+
+            if (length != null){
+
+                File file = new File(directory, fileName);
+
+                if (file.exists()){
+
+                    hitCount++;
+                    callback.onExportFinished(file);
+                    return;
+                }
+
+                // The user or a cleaner app has deleted the file, so it is saved again
+                files.remove(fileName);
+                size -= length;
+                ToneRegistry.getInstance(this.context).forget(file);
+            }
+
+            missCount++;
+        }
+
+        File directory = getDirectory();
+
+        // The external storage may not be available, e.g. when it is mounted to a computer
+        if (directory == null){
+
+            callback.onExportFailed(null);
+            return;
+        }
+
+        SoundExporter.export(context, soundObject, new File(directory, fileName), new SoundExporter.Callback() {
+            @Override
+            public void onExportFinished(File file) {
+
+                add(fileName, file.length());
+                callback.onExportFinished(file);
+            }
+
+            @Override
+            public void onExportFailed(File file) {
+
+                callback.onExportFailed(file);
+            }
+        });
+    }
+
+    // Changes how many bytes the saved files may use, e.g. to free the storage
+    public void setMaxSize(long maxSize){
+
+        synchronized (this){
+
+            this.maxSize = maxSize;
+        }
+
+        scheduleTrim();
+    }
+
+    public synchronized long getSize(){
+
+        return size;
+    }
+
+    public synchronized int getHitCount(){
+
+        return hitCount;
+    }
+
+    public synchronized int getMissCount(){
+
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString(){
+
+        return "ExportCache[files=" + files.size()
+                + ", size=" + size
+                + ", max size=" + maxSize
+                + ", hits=" + hitCount
+                + ", misses=" + missCount + "]";
+    }
+
+    // Returns the name of the file of a sound, sounds that are not in the SoundCatalog are named after their key
+    private String getFileName(SoundObject soundObject){
+
+        String hash = soundHashes.get(soundObject.getItemKey());
+
+        return (hash != null ? hash : soundObject.getItemKey()) + "." + SoundProvider.getExtension(context, soundObject.getItemID());
+    }
+
+    private File getDirectory(){
+
+        synchronized (this){
+
+            if (directory != null)
+                return directory;
+        }
+
+        // getExternalFilesDir() creates the folder if it does not exist yet
+        File directory = context.getExternalFilesDir(Environment.DIRECTORY_RINGTONES);
+
+        synchronized (this){
+
+            this.directory = directory;
+        }
+
+        return directory;
+    }
+
+    private void add(String fileName, long length){
+
+        synchronized (this){
+
+            Long previous = files.put(fileName, length);
+
+            size += length - (previous != null ? previous : 0);
+        }
+
+        scheduleTrim();
+    }
+
+    private void scheduleTrim(){
+
+        SoundExporter.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+
+                trim();
+            }
+        });
+    }
+
+    // Runs on the export thread once
+    // Reads all saved files and deletes the files of sounds that have been changed or removed
+    // The remaining files are registered in the MediaStore if it does not know them yet
+    private void index(){
+
+        File directory = getDirectory();
+        File[] saved = directory != null ? directory.listFiles() : null;
+
+        if (saved == null){
+
+            synchronized (this){
+
+                indexed = true;
+            }
+            return;
+        }
+
+        HashSet<String> protectedFiles = getSystemAudioFiles();
+
+        // The oldest file is the least recently used one when the app starts
+        Arrays.sort(saved, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+
+                long comparison = a.lastModified() - b.lastModified();
+
+                return comparison < 0 ? -1 : (comparison > 0 ? 1 : 0);
+            }
+        });
+
+        ArrayList<File> stale = new ArrayList<>();
+        int deleted = 0;
+
+        synchronized (this){
+
+            for (File file : saved){
+
+                String name = file.getName();
+                int dot = name.lastIndexOf('.');
+                String hash = dot > 0 ? name.substring(0, dot) : name;
+
+                if (!file.isFile())
+                    continue;
+
+                // A temporary file of an export that has been interrupted or a file of a changed or renamed sound
+                if (name.endsWith(".tmp") || (!soundNames.containsKey(hash) && !protectedFiles.contains(file.getAbsolutePath()))){
+
+                    stale.add(file);
+                    continue;
+                }
+
+                files.put(name, file.length());
+                size += file.length();
+            }
+
+            indexed = true;
+        }
+
+        for (File file : stale){
+
+            if (delete(file)){
+
+                deleted++;
+            }
+        }
+
+        Log.d(LOG_TAG, "Found " + files.size() + " saved sounds, deleted " + deleted + " stale files");
+
+        trim();
+
+        LinkedHashMap<File, String> titles = new LinkedHashMap<>();
+
+        synchronized (this){
+
+            for (String name : files.keySet()){
+
+                int dot = name.lastIndexOf('.');
+                String title = soundNames.get(dot > 0 ? name.substring(0, dot) : name);
+
+                if (title != null){
+
+                    titles.put(new File(directory, name), title);
+                }
+            }
+        }
+
+        ToneRegistry.getInstance(context).registerTones(directory, titles);
+    }
+
+    // Runs on the export thread
+    // Deletes the least recently used files until the saved files fit into maxSize
+    private void trim(){
+
+        synchronized (this){
+
+            if (!indexed || directory == null || size <= maxSize)
+                return;
+        }
+
+        ArrayList<File> evicted = new ArrayList<>();
+        HashSet<String> protectedFiles = getSystemAudioFiles();
+
+        synchronized (this){
+
+            Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+
+            // Keep the most recently used file even if it alone is larger than maxSize
+            while (size > maxSize && files.size() > 1 && iterator.hasNext()){
+
+                Map.Entry<String, Long> entry = iterator.next();
+                File file = new File(directory, entry.getKey());
+
+                if (protectedFiles.contains(file.getAbsolutePath()))
+                    continue;
+
+                iterator.remove();
+                size -= entry.getValue();
+                evicted.add(file);
+            }
+        }
+
+        for (File file : evicted){
+
+            delete(file);
+        }
+
+        if (!evicted.isEmpty()){
+
+            Log.d(LOG_TAG, "Deleted " + evicted.size() + " least recently used files, " + this);
+        }
+    }
+
+    // Deletes a file and its entry in the MediaStore so it does not show up in the ringtone lists anymore
+    private boolean delete(File file){
+
+        try {
+
+            String path = file.getAbsolutePath();
+            context.getContentResolver().delete(MediaStore.Audio.Media.getContentUriForPath(path),
+                    MediaStore.MediaColumns.DATA + " = ?", new String[]{path});
+
+        } catch (Exception e){
+
+            // The app may not have the permission to write the MediaStore
+            Log.e(LOG_TAG, "Failed to delete tone of " + file.getName() + ": " + e.getMessage());
+        }
+
+        // The uri of the file is not valid anymore
+        ToneRegistry.getInstance(context).forget(file);
+
+        return file.delete();
+    }
+
+    // Returns the paths of the files that are set as ringtone, notification or alarm right now
+    private HashSet<String> getSystemAudioFiles(){
+
+        HashSet<String> paths = new HashSet<>();
+
+        for (int type : new int[]{RingtoneManager.TYPE_RINGTONE, RingtoneManager.TYPE_NOTIFICATION, RingtoneManager.TYPE_ALARM}){
+
+            Uri toneUri = RingtoneManager.getActualDefaultRingtoneUri(context, type);
+
+            if (toneUri == null)
+                continue;
+
+            Cursor cursor = null;
+
+            try {
+
+                cursor = context.getContentResolver().query(toneUri, new String[]{MediaStore.MediaColumns.DATA}, null, null, null);
+
+                if (cursor != null && cursor.moveToFirst() && cursor.getString(0) != null){
+
+                    paths.add(new File(cursor.getString(0)).getAbsolutePath());
+                }
+
+            } catch (Exception e){
+
+                Log.e(LOG_TAG, "Failed to read system audio: " + e.getMessage());
+            } finally {
+
+                if (cursor != null){
+
+                    cursor.close();
+                }
+            }
+        }
+
+        return paths;
+    }
+}
@@ -1,6 +1,5 @@
 package de.codereddev.howtoandroidsoundboard;
 
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
@@ -10,7 +9,8 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class FavoriteActivity extends AppCompatActivity {
 
@@ -20,31 +20,50 @@ public class FavoriteActivity extends AppCompatActivity {
     // Declare a toolbar to use instead of the system standard toolbar
     Toolbar toolbar;
 
-    // Declare an ArrayList that you fill with SoundObjects that contain all information needed for a sound button
-    ArrayList<SoundObject> favoriteList = new ArrayList<>();
-
     // Declare a RecyclerView and its components
     // You can assign the RecyclerView.Adapter right away
     RecyclerView FavoriteView;
-    SoundboardRecyclerAdapter FavoriteAdapter = new SoundboardRecyclerAdapter(favoriteList);
+    SoundboardRecyclerAdapter FavoriteAdapter = new SoundboardRecyclerAdapter(Collections.<SoundObject>emptyList());
     RecyclerView.LayoutManager FavoriteLayoutManager;
 
-    // Declare a DatabaseHandler to support database usage
-    DatabaseHandler databaseHandler = new DatabaseHandler(this);
+    // Declare the SoundRepository that keeps the favorites of the whole app in memory
+    SoundRepository soundRepository;
+
+    // Shows every new list of favorites, the adapter only updates the buttons that changed
+    private final SoundRepository.Observer repositoryObserver = new SoundRepository.Observer() {
+        @Override
+        public void onFavoritesChanged(List<SoundObject> favorites) {
+
+            FavoriteAdapter.submitList(favorites);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_favorite);
 
+        // Keep the SoundEngine alive while this activity exists
+        EventHandlerClass.acquireSoundEngine();
+
+        // Get notified when the favorites change
+        soundRepository = SoundRepository.getInstance(this);
+        soundRepository.registerObserver(repositoryObserver);
+
         // Assign toolbar to the Toolbar item declared in activity_favorite.xml
         toolbar = (Toolbar) findViewById(R.id.favorite_toolbar);
 
         // Set toolbar as new action bar
         setSupportActionBar(toolbar);
 
-        // Calls a method that adds data from a database to the soundList
-        addDataToArrayList();
+        // Show the favorites right away if they are in memory already
+        // Otherwise they are loaded once and handed to the repositoryObserver
+        List<SoundObject> favorites = soundRepository.getFavorites();
+
+        if (favorites != null){
+
+            FavoriteAdapter.submitList(favorites);
+        }
 
         // Assign SoundView to the RecyclerView item declared in activity_soundboard.xml
         FavoriteView = (RecyclerView) findViewById(R.id.favoriteRecyclerView);
@@ -58,6 +77,9 @@ public class FavoriteActivity extends AppCompatActivity {
         // Set the RecyclerView.Adapter
         FavoriteView.setAdapter(FavoriteAdapter);
 
+        // Preload the sounds of all visible buttons before the user taps them
+        FavoriteView.addOnScrollListener(new PreloadScrollListener(this, (GridLayoutManager) FavoriteLayoutManager, FavoriteAdapter));
+
     }
 
     // Create/Inflate options menu
@@ -81,42 +103,21 @@ public class FavoriteActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onDestroy(){
-        super.onDestroy();
+    protected void onStop(){
+        super.onStop();
 
-        EventHandlerClass.releaseMediaPlayer();
+        // Write all favorite changes before the app may be closed
+        FavoritesStore.getInstance(this).flush();
     }
 
-    // Fill the soundList with all information given in the FAVORITES_TABLE
-    private void addDataToArrayList(){
-
-        favoriteList.clear();
-
-        // Get a cursor filled with all information from the FAVORITES_TABLE
-        Cursor cursor = databaseHandler.getFavorites();
-
-        // Check if the cursor is empty or failed to convert the data
-        if (cursor.getCount() == 0){
-
-            Log.e(LOG_TAG, "Cursor is empty or failed to convert data");
-            cursor.close();
-        }
-
-        // Prevent the method from adding SoundObjects again everytime the Activity starts
-        if (cursor.getCount() != favoriteList.size() ){
-
-            // Add each item of FAVORITES_TABLE to soundList and refresh the RecyclerView by notifying the adapter about changes
-            while (cursor.moveToNext() ){
-
-                String NAME = cursor.getString(cursor.getColumnIndex("favoName"));
-                Integer ID = cursor.getInt(cursor.getColumnIndex("favoId"));
-
-                favoriteList.add(new SoundObject(NAME, ID));
+    @Override
+    protected void onDestroy(){
+        super.onDestroy();
 
-                FavoriteAdapter.notifyDataSetChanged();
-            }
+        // The favorites stay in the SoundRepository for the next time the activity is opened
+        soundRepository.unregisterObserver(repositoryObserver);
 
-            cursor.close();
-        }
+        // The SoundEngine is only released if the main grid does not use it anymore
+        EventHandlerClass.releaseSoundEngine();
     }
 }
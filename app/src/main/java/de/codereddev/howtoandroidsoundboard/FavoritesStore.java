@@ -0,0 +1,284 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+// Keeps the keys of all favorite sounds in memory so every sound button can show its favorite state without a query
+// The favorites are read from the FAVORITES_TABLE once in the background, changes are written in the background as well
+// Until Observer.onFavoritesLoaded() gets called isFavorite() only knows the favorites that were added in the meantime
+// Changes that are made within WRITE_DELAY_MS are written together in one transaction, a failed write is tried again after RETRY_DELAY_MS
+// All methods except flush() have to be called on the UI thread
+public class FavoritesStore implements Handler.Callback {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "FAVORITESSTORE";
+
+    // Define how long changes are collected before they are written
+    private static final long WRITE_DELAY_MS = 500;
+
+    // Define how long to wait before a write that failed is tried again
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private static final int MSG_WRITE = 1;
+
+    // Gets notified about every added and removed favorite on the UI thread
+    // The change is visible in the store right away but may not be written to the database yet
+    public interface Observer {
+
+        void onFavoriteAdded(SoundObject soundObject);
+
+        void onFavoriteRemoved(SoundObject soundObject);
+
+        // Gets called once when the favorites have been read from the database
+        void onFavoritesLoaded();
+    }
+
+    // There is only one FavoritesStore for the whole app so all activities share the favorites
+    private static FavoritesStore instance;
+
+    // Returns the FavoritesStore of the app and creates it if it does not exist yet
+    public static synchronized FavoritesStore getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new FavoritesStore(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private final DatabaseHandler databaseHandler;
+
+    // Contains the keys of all favorite sounds
+    private final HashSet<String> favoriteKeys = new HashSet<>();
+    private boolean loaded;
+
+    // Contains the changes that are not written yet: key -> true if the sound was added, false if it was removed
+    // Only the last change of a sound is kept
+    private final HashMap<String, Boolean> pendingChanges = new HashMap<>();
+
+    private final ArrayList<Observer> observers = new ArrayList<>();
+
+    private final Handler writeHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private FavoritesStore(Context context){
+
+        databaseHandler = DatabaseHandler.getInstance(context);
+
+        HandlerThread thread = new HandlerThread("FavoritesWriter", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+
+        writeHandler = new Handler(thread.getLooper(), this);
+
+        // The favorites are read before any change is written, the writer thread runs its messages in order
+        writeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                long startTime = SystemClock.elapsedRealtime();
+                final HashSet<String> keys = databaseHandler.getFavoriteKeys();
+                Log.d(LOG_TAG, "Loaded " + keys.size() + " favorites in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        onLoaded(keys);
+                    }
+                });
+            }
+        });
+    }
+
+    // Returns true if the sound with the given key is a favorite
+    public boolean isFavorite(String soundKey){
+
+        return favoriteKeys.contains(soundKey);
+    }
+
+    public int getCount(){
+
+        return favoriteKeys.size();
+    }
+
+    // Returns true after the favorites have been read from the database
+    public boolean isLoaded(){
+
+        return loaded;
+    }
+
+    // Add a sound to favorites
+    public void addFavorite(SoundObject soundObject){
+
+        // Ignore sounds that already are favorites
+        if (!favoriteKeys.add(soundObject.getItemKey()))
+            return;
+
+        scheduleWrite(soundObject.getItemKey(), true);
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onFavoriteAdded(soundObject);
+        }
+    }
+
+    // Remove a sound from favorites
+    public void removeFavorite(SoundObject soundObject){
+
+        // Ignore sounds that are no favorites
+        if (!favoriteKeys.remove(soundObject.getItemKey()))
+            return;
+
+        scheduleWrite(soundObject.getItemKey(), false);
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onFavoriteRemoved(soundObject);
+        }
+    }
+
+    // Add several sounds to favorites, e.g. all sounds the user has selected
+    // All changes are written right away in one transaction
+    public void addFavorites(Collection<SoundObject> soundObjects){
+
+        for (SoundObject soundObject : soundObjects){
+            addFavorite(soundObject);
+        }
+
+        flush();
+    }
+
+    // Remove several sounds from favorites, all changes are written right away in one transaction
+    public void removeFavorites(Collection<SoundObject> soundObjects){
+
+        for (SoundObject soundObject : soundObjects){
+            removeFavorite(soundObject);
+        }
+
+        flush();
+    }
+
+    // Registers an observer that gets notified about every added and removed favorite
+    // Don't forget to unregister it, e.g. when the activity is destroyed
+    public void registerObserver(Observer observer){
+
+        if (!observers.contains(observer)){
+
+            observers.add(observer);
+        }
+    }
+
+    public void unregisterObserver(Observer observer){
+
+        observers.remove(observer);
+    }
+
+    // Writes all changes right away instead of waiting for WRITE_DELAY_MS, e.g. when the activity is stopped
+    // It doesn't block, the FavoritesWriter thread keeps running while the app is in the background
+    public void flush(){
+
+        flush(null);
+    }
+
+    // Writes all changes right away and runs onWritten on the UI thread afterwards
+    // Use it before reading favorites from the database
+    public void flush(final Runnable onWritten){
+
+        writeHandler.removeMessages(MSG_WRITE);
+        writeHandler.sendEmptyMessage(MSG_WRITE);
+
+        if (onWritten != null){
+
+            // The write handler runs its messages in order, so this runs after the changes were written
+            writeHandler.post(new Runnable() {
+                @Override
+                public void run() {
+
+                    mainHandler.post(onWritten);
+                }
+            });
+        }
+    }
+
+    // Adds the favorites that were read from the database to the ones that were added in the meantime
+    // A favorite can't be removed before it is known, so nothing that was read has been removed by the user
+    private void onLoaded(HashSet<String> keys){
+
+        favoriteKeys.addAll(keys);
+        loaded = true;
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onFavoritesLoaded();
+        }
+    }
+
+    private void scheduleWrite(String soundKey, boolean favorite){
+
+        synchronized (pendingChanges){
+
+            pendingChanges.put(soundKey, favorite);
+        }
+
+        // A write that is already scheduled takes this change with it
+        if (!writeHandler.hasMessages(MSG_WRITE)){
+
+            writeHandler.sendEmptyMessageDelayed(MSG_WRITE, WRITE_DELAY_MS);
+        }
+    }
+
+    // Runs on the FavoritesWriter thread
+    @Override
+    public boolean handleMessage(Message msg) {
+
+        if (msg.what != MSG_WRITE)
+            return false;
+
+        HashMap<String, Boolean> changes;
+
+        synchronized (pendingChanges){
+
+            if (pendingChanges.isEmpty())
+                return true;
+
+            changes = new HashMap<>(pendingChanges);
+            pendingChanges.clear();
+        }
+
+        if (!databaseHandler.updateFavorites(changes)){
+
+            // Keep the changes for the next write unless the sound has been changed again in the meantime
+            synchronized (pendingChanges){
+
+                for (Map.Entry<String, Boolean> change : changes.entrySet()){
+
+                    if (!pendingChanges.containsKey(change.getKey())){
+
+                        pendingChanges.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+
+            // Try again later, e.g. when the database was locked or the storage was full
+            if (!writeHandler.hasMessages(MSG_WRITE)){
+
+                writeHandler.sendEmptyMessageDelayed(MSG_WRITE, RETRY_DELAY_MS);
+            }
+
+            Log.e(LOG_TAG, "Failed to write " + changes.size() + " favorite changes, retrying in " + RETRY_DELAY_MS + " ms");
+        }
+
+        return true;
+    }
+}
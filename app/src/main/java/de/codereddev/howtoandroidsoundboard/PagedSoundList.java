@@ -0,0 +1,433 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A list of all SoundObjects of a database table that is read page by page while the user scrolls
+// Only a bounded number of pages is kept in memory, so the memory use doesn't grow with the size of the table
+// get() returns null for rows whose page is not loaded yet and starts loading that page in the background
+// The list can't be changed, add(), set() and remove() throw an UnsupportedOperationException
+// Pages are read by the sound before or after them (keyset paging), so a page at the end of the table is read as fast as the first one
+// The sounds where all pages start are read once in the background, until then a page far away from the loaded ones is read by its offset
+// All methods have to be called on the UI thread
+public class PagedSoundList extends AbstractList<SoundObject> {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "PAGEDSOUNDLIST";
+
+    // Define how many sounds are read at once if nothing else is configured (a multiple of the 3 grid columns)
+    public static final int DEFAULT_PAGE_SIZE = 60;
+
+    // Define how many pages are kept in memory if nothing else is configured
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    // Define how many pages before and after the page the user looks at are still loaded
+    // Loaders of pages further away are cancelled, so they don't push the visible pages out of memory
+    private static final int LOAD_WINDOW = 2;
+
+    // Receives the results of the background loading on the UI thread
+    public interface Listener {
+
+        // Gets called when the number of sounds and the first page are known
+        void onListLoaded(PagedSoundList list);
+
+        // Gets called when a page has been loaded, the rows between start and start + count are not null anymore
+        void onPageLoaded(PagedSoundList list, int start, int count);
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private final SoundResolver soundResolver;
+    private final Listener listener;
+
+    private final int pageSize;
+
+    // Contains the loaded pages by their number, ordered from the least to the most recently used page
+    private final LinkedHashMap<Integer, List<SoundObject>> pages;
+
+    // Contains the loaders of all pages that are being read right now
+    private final SparseArray<PageLoader> loaders = new SparseArray<>();
+
+    // Maps pages to the last sound of the page before them and to the first sound of the page after them
+    // They are kept when a page is dropped, so a page that is needed again never has to be read by its offset
+    private final SparseArray<RowKey> afterRows = new SparseArray<>();
+    private final SparseArray<RowKey> beforeRows = new SparseArray<>();
+
+    private int size;
+    // Read by the BoundaryLoader as well, so it stops when the list is closed
+    private volatile boolean closed;
+
+    // Count how often get() found the page of a position in memory
+    private int hitCount;
+    private int missCount;
+
+    public PagedSoundList(DatabaseHandler databaseHandler, SoundResolver soundResolver, Listener listener){
+
+        this(databaseHandler, soundResolver, listener, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    // pageSize : Number of sounds that are read at once
+    // maxPages : Upper limit of pages in memory, the least recently used page is dropped first
+    public PagedSoundList(DatabaseHandler databaseHandler, SoundResolver soundResolver, Listener listener,
+                          int pageSize, final int maxPages){
+
+        this.databaseHandler = databaseHandler;
+        this.soundResolver = soundResolver;
+        this.listener = listener;
+        this.pageSize = pageSize;
+
+        this.pages = new LinkedHashMap<Integer, List<SoundObject>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<SoundObject>> eldest) {
+
+                return size() > maxPages;
+            }
+        };
+    }
+
+    // Counts the sounds and reads the first page in the background
+    // The list is empty until Listener.onListLoaded() gets called
+    public void load(){
+
+        loadPage(0, true);
+    }
+
+    // Stops all loading, e.g. when the activity is destroyed
+    public void close(){
+
+        closed = true;
+
+        for (int i = 0; i < loaders.size(); i++){
+            loaders.valueAt(i).cancel(false);
+        }
+
+        loaders.clear();
+        pages.clear();
+        afterRows.clear();
+        beforeRows.clear();
+    }
+
+    // Returns the SoundObject at the given position or null if its page is not loaded yet
+    // Loads the page of the position and the neighbouring page the user is going to see next
+    @Override
+    public SoundObject get(int position) {
+
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+
+        int page = position / pageSize;
+        int index = position % pageSize;
+
+        // The user has scrolled away from the pages that are still being read
+        cancelLoaders(page - LOAD_WINDOW, page + LOAD_WINDOW);
+
+        // Read the next page before the user reaches it
+        if (index >= pageSize * 3 / 4 && (page + 1) * pageSize < size){
+
+            loadPage(page + 1, false);
+        } else if (index < pageSize / 4 && page > 0){
+
+            loadPage(page - 1, false);
+        }
+
+        List<SoundObject> items = pages.get(page);
+
+        if (items == null){
+
+            missCount++;
+            loadPage(page, false);
+            return null;
+        }
+
+        hitCount++;
+
+        return index < items.size() ? items.get(index) : null;
+    }
+
+    @Override
+    public int size() {
+
+        return size;
+    }
+
+    // Returns the position of the sound with the given key or -1 if it is not in a loaded page
+    public int indexOfSound(String soundKey){
+
+        // Iterating doesn't change the order of the least recently used pages, unlike get()
+        for (Map.Entry<Integer, List<SoundObject>> entry : pages.entrySet()){
+
+            List<SoundObject> items = entry.getValue();
+
+            for (int i = 0; i < items.size(); i++){
+
+                if (items.get(i).getItemKey().equals(soundKey))
+                    return entry.getKey() * pageSize + i;
+            }
+        }
+
+        return -1;
+    }
+
+    // Returns true if all pages of the list are in memory, so get() never returns null
+    public boolean isComplete(){
+
+        int pageCount = (size + pageSize - 1) / pageSize;
+
+        for (int page = 0; page < pageCount; page++){
+
+            if (!pages.containsKey(page))
+                return false;
+        }
+
+        return true;
+    }
+
+    public int getHitCount(){
+
+        return hitCount;
+    }
+
+    public int getMissCount(){
+
+        return missCount;
+    }
+
+    // Starts loading a page if it is neither in memory nor being loaded
+    private void loadPage(int page, boolean count){
+
+        if (closed || pages.containsKey(page) || loaders.get(page) != null)
+            return;
+
+        PageLoader loader = new PageLoader(page, count, afterRows.get(page), beforeRows.get(page));
+        loaders.put(page, loader);
+        loader.execute();
+    }
+
+    // Remembers the sounds around a page that has been loaded
+    private void addBoundaries(int page, RowKey first, RowKey last){
+
+        afterRows.put(page + 1, last);
+
+        if (page > 0){
+
+            beforeRows.put(page - 1, first);
+        }
+    }
+
+    // Cancels the loaders of all pages outside of first and last, a cancelled page is loaded again when it is needed
+    // The loader that counts the sounds is never cancelled, the list would stay empty without it
+    private void cancelLoaders(int first, int last){
+
+        for (int i = loaders.size() - 1; i >= 0; i--){
+
+            int page = loaders.keyAt(i);
+            PageLoader loader = loaders.valueAt(i);
+
+            if ((page < first || page > last) && !loader.count){
+
+                loader.cancel(false);
+                loaders.removeAt(i);
+            }
+        }
+    }
+
+    // The name and _id of a sound, together they are its position in the order of the list
+    private static class RowKey {
+
+        final String name;
+        final long id;
+
+        RowKey(String name, long id){
+
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    // Reads one page of sounds and the number of all sounds if needed
+    private class PageLoader extends AsyncTask<Void, Void, List<SoundObject>> {
+
+        private final int page;
+        private final boolean count;
+
+        // The last sound of the page before and the first sound of the page after, null if they are not known
+        private final RowKey after;
+        private final RowKey before;
+
+        private int loadedSize = -1;
+        private RowKey first;
+        private RowKey last;
+
+        PageLoader(int page, boolean count, RowKey after, RowKey before){
+
+            this.page = page;
+            this.count = count;
+            this.after = after;
+            this.before = before;
+        }
+
+        @Override
+        protected List<SoundObject> doInBackground(Void... params) {
+
+            ArrayList<SoundObject> items = new ArrayList<>(pageSize);
+            Cursor cursor = null;
+
+            try {
+
+                if (count){
+
+                    loadedSize = databaseHandler.getSoundCount();
+                }
+
+                boolean reversed = false;
+
+                if (page == 0 || after != null){
+
+                    cursor = databaseHandler.getSoundCollectionAfter(after != null ? after.name : null, after != null ? after.id : 0, pageSize);
+                } else if (before != null){
+
+                    cursor = databaseHandler.getSoundCollectionBefore(before.name, before.id, pageSize);
+                    reversed = true;
+                } else {
+
+                    // Only happens for a page far away from the loaded ones before the boundaries are known
+                    cursor = databaseHandler.getSoundCollection(page * pageSize, pageSize);
+                }
+
+                int idIndex = cursor.getColumnIndex("_id");
+                int nameIndex = cursor.getColumnIndex("soundName");
+                int keyIndex = cursor.getColumnIndex("soundKey");
+
+                while (!isCancelled() && cursor.moveToNext()){
+
+                    RowKey row = new RowKey(cursor.getString(nameIndex), cursor.getLong(idIndex));
+
+                    if (first == null){
+
+                        first = row;
+                    }
+                    last = row;
+
+                    // The resource id of the sound is resolved from its key
+                    items.add(soundResolver.createSoundObject(cursor.getString(nameIndex), cursor.getString(keyIndex)));
+                }
+
+                if (reversed){
+
+                    Collections.reverse(items);
+
+                    RowKey swap = first;
+                    first = last;
+                    last = swap;
+                }
+
+            } catch (Exception e){
+
+                Log.e(LOG_TAG, "Failed to load page " + page + ": " + e.getMessage());
+
+                // A page that failed is not kept, so it is read again the next time it is needed
+                return null;
+            } finally {
+
+                if (cursor != null){
+
+                    cursor.close();
+                }
+            }
+
+            return items;
+        }
+
+        @Override
+        protected void onPostExecute(List<SoundObject> items) {
+
+            if (closed)
+                return;
+
+            loaders.remove(page);
+
+            if (items != null){
+
+                pages.put(page, items);
+
+                if (first != null){
+
+                    addBoundaries(page, first, last);
+                }
+            }
+
+            if (count){
+
+                size = Math.max(loadedSize, 0);
+                listener.onListLoaded(PagedSoundList.this);
+
+                // A list with more than two pages can be scrolled far enough to need the start of every page
+                if (size > pageSize * 2){
+
+                    new BoundaryLoader().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                }
+            } else if (items != null && !items.isEmpty()){
+
+                listener.onPageLoaded(PagedSoundList.this, page * pageSize, items.size());
+            }
+        }
+    }
+
+    // Reads the last sound of every page once, so every page can be read by the sound before it
+    // Only the name index is read, it runs next to the page loaders so they don't wait for it
+    private class BoundaryLoader extends AsyncTask<Void, Void, SparseArray<RowKey>> {
+
+        @Override
+        protected SparseArray<RowKey> doInBackground(Void... params) {
+
+            SparseArray<RowKey> boundaries = new SparseArray<>();
+            Cursor cursor = null;
+
+            try {
+
+                cursor = databaseHandler.getSoundOrder();
+
+                // The last sound of page - 1 is at position page * pageSize - 1
+                for (int page = 1; !closed && cursor.moveToPosition(page * pageSize - 1); page++){
+
+                    boundaries.put(page, new RowKey(cursor.getString(0), cursor.getLong(1)));
+                }
+
+            } catch (Exception e){
+
+                // The pages are still read by their offset
+                Log.e(LOG_TAG, "Failed to read page boundaries: " + e.getMessage());
+            } finally {
+
+                if (cursor != null){
+
+                    cursor.close();
+                }
+            }
+
+            return boundaries;
+        }
+
+        @Override
+        protected void onPostExecute(SparseArray<RowKey> boundaries) {
+
+            if (closed)
+                return;
+
+            for (int i = 0; i < boundaries.size(); i++){
+
+                afterRows.put(boundaries.keyAt(i), boundaries.valueAt(i));
+            }
+
+            Log.d(LOG_TAG, "Read the boundaries of " + boundaries.size() + " pages");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Decodes a raw sound resource into 16 bit PCM and writes it as a .wav file
+// A SoundPool can load such a file without decoding the mp3 again
+public class PcmDecoder {
+
+    // Size of the RIFF/WAVE header that is written in front of the PCM data
+    private static final int WAV_HEADER_SIZE = 44;
+
+    // Define how long the decoder waits for a free buffer (in microseconds)
+    private static final long TIMEOUT_US = 10000;
+
+    // Decodes the given sound resource into target
+    // The file is written next to target first and renamed at the end so a half written file is never used
+    public static void decodeToWav(Context context, int soundID, File target) throws IOException {
+
+        File temp = new File(target.getPath() + ".tmp");
+
+        AssetFileDescriptor afd = context.getResources().openRawResourceFd(soundID);
+
+        // openRawResourceFd() returns null for resources that are compressed in the APK
+        if (afd == null)
+            throw new IOException("Failed to open sound " + soundID + ", it is compressed");
+
+        MediaExtractor extractor = null;
+        MediaCodec codec = null;
+        RandomAccessFile out = null;
+
+        try {
+
+            // Everything is opened inside the try block so the file descriptor is closed if anything fails
+            extractor = new MediaExtractor();
+            out = new RandomAccessFile(temp, "rw");
+
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            extractor.selectTrack(0);
+
+            MediaFormat format = extractor.getTrackFormat(0);
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            // Leave space for the header, it is written when the length of the data is known
+            out.setLength(0);
+            out.seek(WAV_HEADER_SIZE);
+
+            ByteBuffer[] inputBuffers = getInputBuffers(codec);
+            ByteBuffer[] outputBuffers = getOutputBuffers(codec);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] chunk = new byte[0];
+            long dataLength = 0;
+            boolean inputDone = false;
+            boolean outputDone = false;
+
+            while (!outputDone){
+
+                if (!inputDone){
+
+                    int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+
+                    if (inputIndex >= 0){
+
+                        int size = extractor.readSampleData(getBuffer(codec, inputBuffers, inputIndex, true), 0);
+
+                        if (size < 0){
+
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+
+                if (outputIndex >= 0){
+
+                    if (info.size > 0){
+
+                        if (chunk.length < info.size){
+
+                            chunk = new byte[info.size];
+                        }
+
+                        ByteBuffer buffer = getBuffer(codec, outputBuffers, outputIndex, false);
+                        buffer.position(info.offset);
+                        buffer.get(chunk, 0, info.size);
+                        out.write(chunk, 0, info.size);
+                        dataLength += info.size;
+                    }
+
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED){
+
+                    // Only happens before Android 5
+                    outputBuffers = getOutputBuffers(codec);
+
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED){
+
+                    // The decoder tells the real format of the PCM data here
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                }
+            }
+
+            out.seek(0);
+            out.write(createWavHeader(dataLength, sampleRate, channelCount));
+            out.close();
+
+            if (!temp.renameTo(target)){
+
+                throw new IOException("Failed to rename " + temp.getName());
+            }
+
+        } finally {
+
+            if (codec != null){
+
+                codec.release();
+            }
+            if (extractor != null){
+
+                extractor.release();
+            }
+            if (out != null){
+
+                out.close();
+            }
+
+            afd.close();
+            temp.delete();
+        }
+    }
+
+    // Returns the input buffers of the decoder before Android 5, since then every buffer is requested by getBuffer()
+    @SuppressWarnings("deprecation")
+    private static ByteBuffer[] getInputBuffers(MediaCodec codec){
+
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP ? codec.getInputBuffers() : null;
+    }
+
+    // Returns the output buffers of the decoder before Android 5, since then every buffer is requested by getBuffer()
+    @SuppressWarnings("deprecation")
+    private static ByteBuffer[] getOutputBuffers(MediaCodec codec){
+
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP ? codec.getOutputBuffers() : null;
+    }
+
+    // Returns the input or output buffer with the given index
+    // buffers : The array of getInputBuffers() or getOutputBuffers(), it is null since Android 5
+    private static ByteBuffer getBuffer(MediaCodec codec, ByteBuffer[] buffers, int index, boolean input){
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
+
+            return input ? codec.getInputBuffer(index) : codec.getOutputBuffer(index);
+        }
+
+        return buffers[index];
+    }
+
+    // Returns the number of bytes the decoded PCM data of a sound will need
+    public static long getDecodedSize(long durationMillis, int sampleRate, int channelCount){
+
+        // 16 bit PCM uses 2 bytes per sample and channel
+        return durationMillis * sampleRate / 1000 * channelCount * 2;
+    }
+
+    private static byte[] createWavHeader(long dataLength, int sampleRate, int channelCount){
+
+        int byteRate = sampleRate * channelCount * 2;
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt((int) (dataLength + WAV_HEADER_SIZE - 8));
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '});
+        // Size of the fmt chunk and the audio format (1 = PCM)
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        header.putInt(byteRate);
+        header.putShort((short) (channelCount * 2));
+        // Bits per sample
+        header.putShort((short) 16);
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt((int) dataLength);
+
+        return header.array();
+    }
+}
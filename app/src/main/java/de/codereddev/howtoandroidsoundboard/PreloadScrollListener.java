@@ -0,0 +1,164 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Preloads the sounds of all visible and soon visible sound buttons while the user scrolls through the grid
+// The preloaded sounds may use maxPreloadedBytes of decoded memory, sounds that scrolled away are unloaded again
+// The window is computed from the current list of the adapter every time, so it stays right when the list changes
+public class PreloadScrollListener extends RecyclerView.OnScrollListener {
+
+    // Define how many rows above and below the visible rows are preloaded if nothing else is configured
+    public static final int DEFAULT_WINDOW_ROWS = 2;
+
+    // Define how much memory the preloaded sounds may use if nothing else is configured
+    // Half of the SampleCache is left for the sounds the user plays, so preloading doesn't evict them
+    public static final long DEFAULT_MAX_PRELOADED_BYTES = SoundPoolEngine.DEFAULT_CACHE_BUDGET_BYTES / 2;
+
+    // Define how many bytes a sound is expected to use before the engine has read it
+    // That is about one second of 44.1 kHz stereo
+    private static final long UNKNOWN_SOUND_BYTES = 176 * 1024;
+
+    private final GridLayoutManager layoutManager;
+    private final SoundboardRecyclerAdapter adapter;
+    private final Context context;
+
+    private final int windowRows;
+    private final long maxPreloadedBytes;
+
+    // Maps the key of every preloaded sound to its sound id
+    private HashMap<String, Integer> preloaded = new HashMap<>();
+    // Contains the sounds of the new window while it is computed, it replaces preloaded afterwards
+    private HashMap<String, Integer> window = new HashMap<>();
+
+    // The engine the sounds in preloaded were loaded into
+    private SoundEngine preloadEngine;
+
+    public PreloadScrollListener(Context context, GridLayoutManager layoutManager, SoundboardRecyclerAdapter adapter){
+
+        this(context, layoutManager, adapter, DEFAULT_WINDOW_ROWS, DEFAULT_MAX_PRELOADED_BYTES);
+    }
+
+    // windowRows : Rows above and below the visible rows that are preloaded
+    // maxPreloadedBytes : Upper limit of the decoded memory of the preloaded sounds, the window gets smaller if it would need more
+    public PreloadScrollListener(Context context, GridLayoutManager layoutManager, SoundboardRecyclerAdapter adapter,
+                                 int windowRows, long maxPreloadedBytes){
+
+        this.context = context.getApplicationContext();
+        this.layoutManager = layoutManager;
+        this.adapter = adapter;
+        this.windowRows = windowRows;
+        this.maxPreloadedBytes = maxPreloadedBytes;
+    }
+
+    // RecyclerView calls this method with dy = 0 after every layout as well, so the first screen gets preloaded too
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION)
+            return;
+
+        int count = adapter.getItemCount();
+        int windowItems = windowRows * layoutManager.getSpanCount();
+
+        // Look further ahead in the direction the user is scrolling to
+        int ahead = windowItems * 2 - windowItems / 2;
+        int behind = windowItems / 2;
+        int step = dy < 0 ? -1 : 1;
+
+        // Get the engine every time because it is recreated after EventHandlerClass.releaseMediaPlayer()
+        SoundEngine engine = EventHandlerClass.getSoundEngine(context);
+
+        // A new engine doesn't contain any of the sounds that were preloaded before
+        if (engine != preloadEngine){
+
+            preloaded.clear();
+            preloadEngine = engine;
+        }
+
+        window.clear();
+        long bytes = 0;
+
+        // The visible sounds come first, then the ones the user is scrolling towards, then the ones behind
+        for (int position = first; position <= last; position++){
+
+            bytes = addToWindow(engine, position, bytes, false);
+        }
+        for (int i = 1; i <= ahead; i++){
+
+            bytes = addToWindow(engine, step > 0 ? last + i : first - i, bytes, false);
+        }
+        for (int i = 1; i <= behind; i++){
+
+            bytes = addToWindow(engine, step > 0 ? first - i : last + i, bytes, false);
+        }
+
+        // Keep the sounds that were preloaded before and are still close, so scrolling back and forth doesn't load them again
+        for (int position = Math.max(0, first - behind - windowItems); position <= Math.min(count - 1, last + ahead + windowItems); position++){
+
+            bytes = addToWindow(engine, position, bytes, true);
+        }
+
+        // Unload every sound that is not part of the new window anymore
+        for (Map.Entry<String, Integer> entry : preloaded.entrySet()){
+
+            if (!window.containsKey(entry.getKey())){
+
+                engine.unload(entry.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : window.entrySet()){
+
+            if (!preloaded.containsKey(entry.getKey())){
+
+                engine.preload(entry.getValue());
+            }
+        }
+
+        // Reuse the old map for the next window
+        HashMap<String, Integer> previous = preloaded;
+        preloaded = window;
+        window = previous;
+    }
+
+    // Adds the sound at the given position to the window if it fits into maxPreloadedBytes and returns the new size of the window
+    // onlyPreloaded : Only add the sound if it is preloaded already
+    private long addToWindow(SoundEngine engine, int position, long bytes, boolean onlyPreloaded){
+
+        if (position < 0 || position >= adapter.getItemCount())
+            return bytes;
+
+        SoundObject soundObject = adapter.getItem(position);
+
+        if (soundObject == null || soundObject.getItemID() == null)
+            return bytes;
+
+        String soundKey = soundObject.getItemKey();
+
+        if (window.containsKey(soundKey) || (onlyPreloaded && !preloaded.containsKey(soundKey)))
+            return bytes;
+
+        long size = engine.getDecodedBytes(soundObject.getItemID());
+
+        if (size < 0){
+
+            size = UNKNOWN_SOUND_BYTES;
+        }
+
+        // The first sound is always preloaded, even if it alone is bigger than the budget
+        if (bytes + size > maxPreloadedBytes && !window.isEmpty())
+            return bytes;
+
+        window.put(soundKey, soundObject.getItemID());
+
+        return bytes + size;
+    }
+}
@@ -0,0 +1,140 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.util.LruCache;
+
+// Cache of all sounds that are decoded into the SoundPool of one SoundPoolEngine, keyed by the sound resource id
+// Every engine has its own cache, it is dropped together with the engine when the engine is released
+// The size of each entry is the number of bytes its decoded PCM data needs
+// If the cache grows bigger than its budget the least recently played sounds are evicted
+public class SampleCache {
+
+    // An Entry is a sound that is decoded and held in memory by the SoundPool
+    public static class Entry {
+
+        private final int soundID;
+        private final int sampleId;
+        private final int decodedBytes;
+
+        public Entry(int soundID, int sampleId, int decodedBytes){
+
+            this.soundID = soundID;
+            this.sampleId = sampleId;
+            this.decodedBytes = decodedBytes;
+        }
+
+        public int getSoundID(){
+
+            return soundID;
+        }
+
+        public int getSampleId(){
+
+            return sampleId;
+        }
+
+        public int getDecodedBytes(){
+
+            return decodedBytes;
+        }
+    }
+
+    // Gets called for every entry that has been thrown out of the cache to make room for other sounds
+    public interface EvictionListener {
+
+        void onEvicted(Entry entry);
+    }
+
+    private final LruCache<Integer, Entry> entries;
+
+    private EvictionListener evictionListener;
+
+    public SampleCache(int budgetBytes){
+
+        entries = new LruCache<Integer, Entry>(budgetBytes) {
+
+            @Override
+            protected int sizeOf(Integer key, Entry value) {
+
+                // Every entry needs at least 1 byte, otherwise it could never be evicted
+                return Math.max(1, value.getDecodedBytes());
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Entry oldValue, Entry newValue) {
+
+                if (evicted && evictionListener != null){
+
+                    evictionListener.onEvicted(oldValue);
+                }
+            }
+        };
+    }
+
+    public void setEvictionListener(EvictionListener evictionListener){
+
+        this.evictionListener = evictionListener;
+    }
+
+    // Returns the entry of a sound or null if the sound is not decoded yet
+    // Every call counts as a hit or a miss
+    public Entry get(int soundID){
+
+        return entries.get(soundID);
+    }
+
+    // An entry that is bigger than the budget is evicted right away, SoundPoolEngine streams such sounds instead
+    public void put(Entry entry){
+
+        entries.put(entry.getSoundID(), entry);
+    }
+
+    // Removes a sound from the cache without calling the EvictionListener
+    public Entry remove(int soundID){
+
+        return entries.remove(soundID);
+    }
+
+    // Removes all sounds from the cache without calling the EvictionListener
+    public void clear(){
+
+        EvictionListener listener = evictionListener;
+
+        evictionListener = null;
+        entries.evictAll();
+        evictionListener = listener;
+    }
+
+    public int getBudgetBytes(){
+
+        return entries.maxSize();
+    }
+
+    public int getSizeBytes(){
+
+        return entries.size();
+    }
+
+    public int getHitCount(){
+
+        return entries.hitCount();
+    }
+
+    public int getMissCount(){
+
+        return entries.missCount();
+    }
+
+    public int getEvictionCount(){
+
+        return entries.evictionCount();
+    }
+
+    @Override
+    public String toString(){
+
+        return "SampleCache[size=" + getSizeBytes() + "/" + getBudgetBytes()
+                + " bytes, hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,28 @@
+package de.codereddev.howtoandroidsoundboard;
+
+// A SoundEngine is the playback backend behind EventHandlerClass
+// Implementations decide how a raw sound resource is decoded, kept in memory and played
+// You can swap the engine with EventHandlerClass.setSoundEngine() if you want to use your own
+public interface SoundEngine {
+
+    // Loads a sound into memory so a later play() can start without decoding first
+    void preload(int soundID);
+
+    // Frees the memory of a preloaded sound that will probably not be played soon
+    void unload(int soundID);
+
+    // Returns how many bytes a preloaded sound uses in memory, 0 if it is never kept in memory
+    // Returns -1 if the engine has not read the sound yet, e.g. because it has never been preloaded
+    // May be called on any thread
+    long getDecodedBytes(int soundID);
+
+    // Starts playing a sound
+    void play(int soundID);
+
+    // Stops every sound that is playing right now
+    void stopAll();
+
+    // Releases all native resources that are held by the engine
+    // The engine must not be used after calling this method
+    void release();
+}
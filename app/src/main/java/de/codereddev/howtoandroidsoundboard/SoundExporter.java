@@ -0,0 +1,269 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// Copies sounds to files in the background, e.g. to share them or to use them as ringtone
+// The sound is copied from the file descriptor of the raw resource to the file channel of the target
+// with FileChannel.transferTo(), so the data doesn't have to pass through a Java buffer
+// The target file appears only after the whole sound has been copied
+public class SoundExporter {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SOUNDEXPORTER";
+
+    // Define how many bytes are copied at once, the progress is updated after every chunk
+    private static final long CHUNK_SIZE = 1024 * 1024;
+
+    // Define how long an export has to take before a progress dialog is shown
+    private static final long PROGRESS_DELAY_MS = 300;
+
+    // All exports run one after another on their own thread so they don't wait for the loading of the sound lists
+    private static final Executor EXPORT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // Receives the result of an export on the UI thread
+    public interface Callback {
+
+        // Gets called when the file is complete
+        void onExportFinished(File file);
+
+        // Gets called if the sound could not be copied, the file does not exist in that case
+        // The file is null if there is no storage to save it to
+        void onExportFailed(File file);
+    }
+
+    // Receives the progress of copySound()
+    public interface ProgressListener {
+
+        void onProgress(long copied, long length);
+    }
+
+    // Copies a sound into the given file in the background
+    // context : The context of the activity, a progress dialog is shown in it if the copy takes a while
+    // The activity is only referenced weakly, so it can be destroyed while the sound is copied
+    public static void export(Context context, SoundObject soundObject, File file, Callback callback){
+
+        new ExportTask(context, soundObject, file, callback).executeOnExecutor(EXPORT_EXECUTOR);
+    }
+
+    // Returns true if a dialog can be shown in the given context
+    // A dialog in an activity that is finishing or destroyed would throw a BadTokenException
+    static boolean canShowDialog(Context context){
+
+        if (context == null)
+            return false;
+
+        if (context instanceof Activity){
+
+            Activity activity = (Activity) context;
+
+            return !activity.isFinishing() && !activity.isDestroyed();
+        }
+
+        return true;
+    }
+
+    // Returns the thread all exports run on
+    // The ExportCache deletes its files on the same thread so it never deletes a file that is being written
+    static Executor getExecutor(){
+
+        return EXPORT_EXECUTOR;
+    }
+
+    // Copies a sound into a file and returns the number of copied bytes
+    // The sound is written to a temporary file that is renamed after the copy succeeded
+    // May be called on any thread except the UI thread
+    public static long copySound(Context context, int soundID, File file, ProgressListener listener) throws IOException {
+
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        AssetFileDescriptor afd = context.getResources().openRawResourceFd(soundID);
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        boolean copiedAll = false;
+
+        try {
+
+            in = new FileInputStream(afd.getFileDescriptor());
+            out = new FileOutputStream(tempFile);
+
+            FileChannel source = in.getChannel();
+            FileChannel target = out.getChannel();
+
+            long length = afd.getLength();
+            long copied = 0;
+
+            while (copied < length){
+
+                // The sound is a range of the APK, transferTo() reads from an absolute position
+                long transferred = source.transferTo(afd.getStartOffset() + copied, Math.min(CHUNK_SIZE, length - copied), target);
+
+                if (transferred <= 0)
+                    throw new IOException("Unexpected end of sound after " + copied + " of " + length + " bytes");
+
+                copied += transferred;
+
+                if (listener != null){
+
+                    listener.onProgress(copied, length);
+                }
+            }
+
+            // Make sure the whole file is written before it is handed to other apps
+            out.getFD().sync();
+            copiedAll = true;
+
+        } finally {
+
+            if (in != null){
+
+                in.close();
+            }
+            if (out != null){
+
+                out.close();
+            }
+            afd.close();
+
+            // Don't leave a partial copy behind
+            if (!copiedAll){
+
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(file)){
+
+            tempFile.delete();
+            throw new IOException("Failed to rename " + tempFile.getName());
+        }
+
+        return file.length();
+    }
+
+    private static class ExportTask extends AsyncTask<Void, Integer, Boolean> implements ProgressListener {
+
+        private final WeakReference<Context> context;
+        private final Context applicationContext;
+        private final SoundObject soundObject;
+        private final File file;
+        private final Callback callback;
+
+        private final Handler handler = new Handler();
+        private ProgressDialog progressDialog;
+
+        private final Runnable showProgress = new Runnable() {
+            @Override
+            public void run() {
+
+                Context activity = context.get();
+
+                // Don't show a dialog in an activity that has been closed in the meantime
+                if (!canShowDialog(activity))
+                    return;
+
+                progressDialog = new ProgressDialog(activity);
+                progressDialog.setMessage("Saving " + soundObject.getItemName());
+                progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+                progressDialog.setMax(100);
+                progressDialog.setCancelable(false);
+                progressDialog.show();
+            }
+        };
+
+        ExportTask(Context context, SoundObject soundObject, File file, Callback callback){
+
+            this.context = new WeakReference<>(context);
+            this.applicationContext = context.getApplicationContext();
+            this.soundObject = soundObject;
+            this.file = file;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void onPreExecute() {
+
+            // Short sounds are copied before the user would notice a dialog
+            handler.postDelayed(showProgress, PROGRESS_DELAY_MS);
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+
+            long startTime = SystemClock.elapsedRealtime();
+
+            try {
+
+                long length = copySound(applicationContext, soundObject.getItemID(), file, this);
+                long time = Math.max(1, SystemClock.elapsedRealtime() - startTime);
+
+                // Bytes per millisecond / 1000 = MB per second
+                Log.i(LOG_TAG, "Saved sound " + soundObject.getItemName() + " (" + length + " bytes) in " + time + " ms, "
+                        + String.format("%.1f", length / (float) time / 1000) + " MB/s");
+
+                return true;
+
+            } catch (Exception e){
+
+                Log.e(LOG_TAG, "Failed to save file: " + e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public void onProgress(long copied, long length) {
+
+            publishProgress((int) (copied * 100 / length));
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+
+            if (progressDialog != null){
+
+                progressDialog.setProgress(values[values.length - 1]);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean success) {
+
+            handler.removeCallbacks(showProgress);
+
+            if (progressDialog != null){
+
+                try {
+
+                    progressDialog.dismiss();
+                } catch (IllegalArgumentException e){
+
+                    // The activity has been closed in the meantime
+                    Log.e(LOG_TAG, "Failed to dismiss progress: " + e.getMessage());
+                }
+            }
+
+            if (success){
+
+                callback.onExportFinished(file);
+            } else {
+
+                callback.onExportFailed(file);
+            }
+        }
+    }
+}
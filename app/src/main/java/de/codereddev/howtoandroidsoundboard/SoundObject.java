@@ -3,14 +3,17 @@ package de.codereddev.howtoandroidsoundboard;
 public class SoundObject {
 
     // SoundObject is an object that stores all kind of information you need for a sound button
-    // like a name and the soundID/itemID
-    // The itemID will be the resource id for a raw .mp3 file that is stored in the raw folder in the projects res folder
+    // like a name, the soundKey/itemKey and the soundID/itemID
+    // The itemKey is the name of a raw .mp3 file that is stored in the raw folder in the projects res folder (without .mp3)
+    // The itemID will be the resource id for that file, it may change with every build so it is never stored in the database
     private String itemName;
+    private String itemKey;
     private Integer itemID;
 
-    public SoundObject(String itemName, Integer itemID){
+    public SoundObject(String itemName, String itemKey, Integer itemID){
 
         this.itemName = itemName;
+        this.itemKey = itemKey;
         this.itemID = itemID;
     }
 
@@ -19,6 +22,11 @@ public class SoundObject {
         return itemName;
     }
 
+    public String getItemKey(){
+
+        return itemKey;
+    }
+
     public Integer getItemID(){
 
         return itemID;
@@ -0,0 +1,592 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// SoundEngine that keeps short sounds decoded in a SoundPool and streams long sounds with a MediaPlayer
+// SoundPool decodes a sound once when it is loaded, so every following play starts without any decoding
+// Several sounds can play at the same time, a VoiceAllocator decides which one is stopped if all voices are in use
+// The decoded sounds are kept in a SampleCache with a memory budget, evicted sounds can be spilled as .wav to the cache dir
+// Only sounds that are evicted because the memory budget is full are spilled, the spilled files have their own budget
+public class SoundPoolEngine implements SoundEngine {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SOUNDPOOLENGINE";
+
+    // Sounds with a bigger file size than this are streamed instead of being decoded into memory
+    // 256 KB of a 128 kbit/s mp3 are about 16 seconds of audio
+    private static final long STREAM_THRESHOLD_BYTES = 256 * 1024;
+
+    // Define how many sounds can play at the same time if nothing else is configured
+    public static final int DEFAULT_MAX_VOICES = 4;
+
+    // Define how much memory the decoded sounds may use if nothing else is configured
+    public static final int DEFAULT_CACHE_BUDGET_BYTES = 8 * 1024 * 1024;
+
+    // Define how much storage the spilled .wav files may use
+    // A .wav file is about 10 times bigger than its mp3
+    public static final long DEFAULT_SPILL_BUDGET_BYTES = 32 * 1024 * 1024;
+
+    // Name of the folder in the app cache dir that contains the spilled .wav files
+    private static final String SPILL_DIRECTORY = "pcm";
+
+    // Information about a sound resource that only has to be read once
+    private static class SoundInfo {
+
+        boolean streamed;
+        long rawLength;
+        long duration;
+        int decodedBytes;
+    }
+
+    private final Context context;
+
+    private SoundPool soundPool;
+
+    // Decides which voice plays a new sound
+    private final VoiceAllocator voiceAllocator;
+
+    // One MediaPlayer per voice for all sounds that are too long to be kept in memory
+    // They are created once and reused with reset() afterwards
+    private final MediaPlayer[] streamPlayers;
+    // Remembers for each voice if it plays with its MediaPlayer or with the SoundPool
+    private final boolean[] streamedVoices;
+
+    // Contains all sounds that are loaded into the SoundPool
+    private final SampleCache sampleCache;
+
+    // Contains the spilled .wav files, null if spilling is disabled
+    private final SpillCache spillCache;
+    // Writes the spilled .wav files in the background
+    private ExecutorService spillExecutor;
+    // Maps a sample id back to its sound resource id
+    private final SparseIntArray soundIds = new SparseIntArray();
+    // Contains all samples that have been decoded completely
+    private final SparseBooleanArray loadedSamples = new SparseBooleanArray();
+    // Contains all sounds that were tapped before they finished loading with the volume they should be played with
+    private final SparseArray<Float> pendingPlays = new SparseArray<>();
+    // Caches size and duration for every sound resource id
+    private final SparseArray<SoundInfo> soundInfos = new SparseArray<>();
+    // Contains the decoded size of every sound in soundInfos, it is read by other threads as well
+    private final SparseIntArray decodedSizes = new SparseIntArray();
+
+    public SoundPoolEngine(Context context){
+
+        this(context, DEFAULT_MAX_VOICES, VoiceStealingPolicy.OLDEST);
+    }
+
+    public SoundPoolEngine(Context context, int maxVoices, VoiceStealingPolicy policy){
+
+        this(context, maxVoices, policy, DEFAULT_CACHE_BUDGET_BYTES, true);
+    }
+
+    // cacheBudgetBytes : Memory the decoded sounds may use
+    // spillToDisk : Write evicted sounds as decoded .wav files into the app cache dir so they load faster next time
+    public SoundPoolEngine(Context context, int maxVoices, VoiceStealingPolicy policy, int cacheBudgetBytes, boolean spillToDisk){
+
+        this.context = context.getApplicationContext();
+        this.voiceAllocator = new VoiceAllocator(maxVoices, policy);
+        this.streamPlayers = new MediaPlayer[maxVoices];
+        this.streamedVoices = new boolean[maxVoices];
+
+        this.sampleCache = new SampleCache(cacheBudgetBytes);
+        this.sampleCache.setEvictionListener(new SampleCache.EvictionListener() {
+            @Override
+            public void onEvicted(SampleCache.Entry entry) {
+
+                // The memory budget is full, spill the sound so it loads faster next time
+                unloadSample(entry, true);
+            }
+        });
+
+        this.spillCache = spillToDisk ? new SpillCache(new File(this.context.getCacheDir(), SPILL_DIRECTORY), DEFAULT_SPILL_BUDGET_BYTES) : null;
+    }
+
+    // Returns the cache of all decoded sounds, e.g. to read its hit/miss/eviction counters
+    public SampleCache getSampleCache(){
+
+        return sampleCache;
+    }
+
+    @Override
+    public void preload(int soundID){
+
+        if (getSoundInfo(soundID).streamed)
+            return;
+
+        loadSample(soundID);
+    }
+
+    @Override
+    public void unload(int soundID){
+
+        // Don't cut off a sound that is still playing
+        long now = SystemClock.uptimeMillis();
+
+        for (int i = 0; i < voiceAllocator.getMaxVoices(); i++){
+
+            VoiceAllocator.Voice voice = voiceAllocator.getVoice(i);
+
+            if (voice.isActive() && voice.getSoundID() == soundID
+                    && (voice.getDuration() <= 0 || voice.getStartTime() + voice.getDuration() > now))
+                return;
+        }
+
+        SampleCache.Entry entry = sampleCache.remove(soundID);
+
+        // The sound only left the preload window, it is decoded from the mp3 again if it comes back
+        if (entry != null){
+
+            unloadSample(entry, false);
+        }
+    }
+
+    @Override
+    public long getDecodedBytes(int soundID){
+
+        synchronized (decodedSizes){
+
+            return decodedSizes.get(soundID, -1);
+        }
+    }
+
+    @Override
+    public void play(int soundID){
+
+        play(soundID, 1.0f);
+    }
+
+    // Starts playing a sound with the given volume (0.0 - 1.0)
+    public void play(int soundID, float volume){
+
+        if (getSoundInfo(soundID).streamed){
+
+            playStream(soundID, volume);
+            return;
+        }
+
+        int sampleId = loadSample(soundID).getSampleId();
+
+        // Play the sound as soon as SoundPool has finished decoding it
+        if (!loadedSamples.get(sampleId)){
+
+            pendingPlays.put(soundID, volume);
+            return;
+        }
+
+        playSample(soundID, sampleId, volume);
+    }
+
+    @Override
+    public void stopAll(){
+
+        for (int i = 0; i < voiceAllocator.getMaxVoices(); i++){
+            stopVoice(voiceAllocator.getVoice(i));
+        }
+
+        pendingPlays.clear();
+    }
+
+    @Override
+    public void release(){
+
+        if (soundPool != null){
+
+            soundPool.release();
+            soundPool = null;
+        }
+
+        for (int i = 0; i < streamPlayers.length; i++){
+
+            if (streamPlayers[i] != null){
+
+                streamPlayers[i].release();
+                streamPlayers[i] = null;
+            }
+        }
+
+        if (spillExecutor != null){
+
+            spillExecutor.shutdown();
+            spillExecutor = null;
+        }
+
+        voiceAllocator.releaseAll();
+        sampleCache.clear();
+        soundIds.clear();
+        loadedSamples.clear();
+        pendingPlays.clear();
+    }
+
+    // Loads a sound into the SoundPool if it is not loaded yet and returns its cache entry
+    private SampleCache.Entry loadSample(int soundID){
+
+        SampleCache.Entry entry = sampleCache.get(soundID);
+
+        if (entry == null){
+
+            SoundInfo info = getSoundInfo(soundID);
+            String spillName = getSpillName(soundID, info);
+            int sampleId;
+
+            // A spilled .wav file only has to be copied into memory instead of being decoded again
+            if (spillName != null && spillCache.contains(spillName) && spillCache.getFile(spillName).exists()){
+
+                sampleId = getSoundPool().load(spillCache.getFile(spillName).getAbsolutePath(), 1);
+            } else {
+
+                if (spillName != null){
+
+                    // The system may have cleared the cache dir
+                    spillCache.remove(spillName);
+                }
+
+                sampleId = loadSampleFd(soundID);
+            }
+
+            soundIds.put(sampleId, soundID);
+
+            entry = new SampleCache.Entry(soundID, sampleId, info.decodedBytes);
+            sampleCache.put(entry);
+        }
+
+        return entry;
+    }
+
+    // Loads a sound from res/raw into the SoundPool
+    // SoundPool duplicates the file descriptor so it can be closed right away
+    private int loadSampleFd(int soundID){
+
+        AssetFileDescriptor afd = context.getResources().openRawResourceFd(soundID);
+
+        try {
+
+            return getSoundPool().load(afd, 1);
+        } finally {
+
+            closeQuietly(afd);
+        }
+    }
+
+    // Throws a sound that was removed from the SampleCache out of the SoundPool
+    // spill : Write the decoded sound into the SpillCache
+    private void unloadSample(SampleCache.Entry entry, boolean spill){
+
+        if (soundPool != null){
+
+            soundPool.unload(entry.getSampleId());
+        }
+
+        loadedSamples.delete(entry.getSampleId());
+        soundIds.delete(entry.getSampleId());
+        pendingPlays.remove(entry.getSoundID());
+
+        if (spill){
+
+            spill(entry.getSoundID());
+        }
+    }
+
+    // Decodes an evicted sound into a .wav file in the background
+    private void spill(final int soundID){
+
+        final String spillName = getSpillName(soundID, getSoundInfo(soundID));
+
+        if (spillName == null || spillCache.contains(spillName))
+            return;
+
+        if (spillExecutor == null){
+
+            spillExecutor = Executors.newSingleThreadExecutor();
+        }
+
+        spillExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                try {
+
+                    File spillFile = spillCache.getFile(spillName);
+                    File spillDirectory = spillFile.getParentFile();
+
+                    if (!spillFile.exists() && (spillDirectory.isDirectory() || spillDirectory.mkdirs())){
+
+                        PcmDecoder.decodeToWav(context, soundID, spillFile);
+
+                        // Deletes the least recently used files if the budget is exceeded
+                        spillCache.put(spillName);
+                    }
+                } catch (Exception e){
+
+                    Log.e(LOG_TAG, "Failed to spill sound: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    // Returns the name of the .wav file a sound is spilled to or null if spilling is disabled
+    // The file name contains the size of the raw file so a changed sound does not use an old file
+    private String getSpillName(int soundID, SoundInfo info){
+
+        if (spillCache == null)
+            return null;
+
+        try {
+
+            String name = context.getResources().getResourceEntryName(soundID);
+            return name + "_" + info.rawLength + ".wav";
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to get spill file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void playSample(int soundID, int sampleId, float volume){
+
+        long now = SystemClock.uptimeMillis();
+        VoiceAllocator.Voice voice = acquireVoice(soundID, now);
+
+        int streamId = soundPool.play(sampleId, volume, volume, 1, 0, 1.0f);
+
+        streamedVoices[voice.getIndex()] = false;
+        voiceAllocator.start(voice, soundID, streamId, volume, getSoundInfo(soundID).duration, now);
+    }
+
+    // Plays a long sound with the MediaPlayer of a free voice
+    // The MediaPlayer prepares asynchronously and starts as soon as it is ready
+    private void playStream(int soundID, float volume){
+
+        long now = SystemClock.uptimeMillis();
+        final VoiceAllocator.Voice voice = acquireVoice(soundID, now);
+        final int index = voice.getIndex();
+
+        AssetFileDescriptor afd = null;
+
+        try {
+
+            MediaPlayer player = streamPlayers[index];
+
+            if (player == null){
+
+                player = new MediaPlayer();
+                player.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                    @Override
+                    public void onPrepared(MediaPlayer mp) {
+
+                        mp.start();
+                    }
+                });
+                player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                    @Override
+                    public void onCompletion(MediaPlayer mp) {
+
+                        // Free the voice so it does not have to be stolen
+                        voiceAllocator.release(voice);
+                    }
+                });
+                streamPlayers[index] = player;
+            }
+
+            afd = context.getResources().openRawResourceFd(soundID);
+            player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            player.setVolume(volume, volume);
+            player.prepareAsync();
+
+            // The voice is in use while it is preparing, stopping it resets the MediaPlayer and cancels the start
+            streamedVoices[index] = true;
+            voiceAllocator.start(voice, soundID, 0, volume, getSoundInfo(soundID).duration, now);
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to stream sound: " + e.getMessage());
+        } finally {
+
+            closeQuietly(afd);
+        }
+    }
+
+    // Gets a voice for a new sound and stops the sound it played before if necessary
+    private VoiceAllocator.Voice acquireVoice(int soundID, long now){
+
+        VoiceAllocator.Voice voice = voiceAllocator.acquire(soundID, now);
+
+        stopVoice(voice);
+
+        return voice;
+    }
+
+    private void stopVoice(VoiceAllocator.Voice voice){
+
+        int index = voice.getIndex();
+
+        if (streamedVoices[index]){
+
+            // A reset MediaPlayer is ready to get a new data source
+            if (streamPlayers[index] != null){
+
+                streamPlayers[index].reset();
+            }
+        } else if (voice.isActive() && soundPool != null){
+
+            soundPool.stop(voice.getStreamId());
+        }
+
+        voiceAllocator.release(voice);
+    }
+
+    // Reads the size and the duration of a sound
+    // The information is cached because it never changes while the app is running
+    private SoundInfo getSoundInfo(int soundID){
+
+        SoundInfo info = soundInfos.get(soundID);
+
+        if (info != null)
+            return info;
+
+        info = new SoundInfo();
+        AssetFileDescriptor afd = null;
+        MediaExtractor extractor = null;
+
+        try {
+
+            afd = context.getResources().openRawResourceFd(soundID);
+
+            // openRawResourceFd() returns null for compressed resources which can't be loaded by a SoundPool anyway
+            info.streamed = afd == null || afd.getLength() > STREAM_THRESHOLD_BYTES;
+
+            if (afd != null){
+
+                info.rawLength = afd.getLength();
+
+                extractor = new MediaExtractor();
+                extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+
+                MediaFormat format = extractor.getTrackFormat(0);
+
+                if (format.containsKey(MediaFormat.KEY_DURATION)){
+
+                    // The duration is given in microseconds
+                    info.duration = format.getLong(MediaFormat.KEY_DURATION) / 1000;
+                }
+
+                info.decodedBytes = (int) PcmDecoder.getDecodedSize(info.duration,
+                        format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+
+                // A sample that is bigger than the whole SampleCache would be evicted again while it is still loading
+                // and a tap on it would never be played, so it is streamed like a long sound
+                if (info.decodedBytes > sampleCache.getBudgetBytes()){
+
+                    info.streamed = true;
+                }
+            }
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to read sound information: " + e.getMessage());
+            info.streamed = afd == null;
+        } finally {
+
+            if (extractor != null){
+
+                extractor.release();
+            }
+
+            closeQuietly(afd);
+        }
+
+        soundInfos.put(soundID, info);
+
+        synchronized (decodedSizes){
+
+            // Streamed sounds are never kept in memory
+            decodedSizes.put(soundID, info.streamed ? 0 : info.decodedBytes);
+        }
+
+        return info;
+    }
+
+    private SoundPool getSoundPool(){
+
+        if (soundPool == null){
+
+            int maxVoices = voiceAllocator.getMaxVoices();
+
+            // SoundPool.Builder was added in Android 5 (Lollipop), older versions have to use the deprecated constructor
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
+
+                AudioAttributes attributes = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_GAME)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build();
+
+                soundPool = new SoundPool.Builder()
+                        .setMaxStreams(maxVoices)
+                        .setAudioAttributes(attributes)
+                        .build();
+            } else {
+
+                soundPool = new SoundPool(maxVoices, AudioManager.STREAM_MUSIC, 0);
+            }
+
+            soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+                @Override
+                public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+
+                    if (status != 0){
+
+                        Log.e(LOG_TAG, "Failed to load sample " + sampleId + " (status " + status + ")");
+                        return;
+                    }
+
+                    loadedSamples.put(sampleId, true);
+
+                    // Start the sound if the user tapped it while it was loading
+                    int soundID = soundIds.get(sampleId, 0);
+                    Float volume = pendingPlays.get(soundID);
+
+                    if (soundID != 0 && volume != null){
+
+                        pendingPlays.remove(soundID);
+                        playSample(soundID, sampleId, volume);
+                    }
+                }
+            });
+        }
+
+        return soundPool;
+    }
+
+    private static void closeQuietly(AssetFileDescriptor afd){
+
+        if (afd != null){
+
+            try {
+
+                afd.close();
+            } catch (IOException e){
+
+                Log.e(LOG_TAG, "Failed to close file descriptor: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.TypedValue;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Shares sounds with other apps without writing them to the storage first
+// Every sound has an uri like content://<package>.sounds/<soundKey>/<soundName>.mp3
+// The sound is streamed through a pipe straight from its range in the APK
+// A pipe works for all apps, the range itself would fail for apps that use ContentResolver.openFileDescriptor()
+// Several sounds are shared as one ZIP archive: content://<package>.sounds/zip/<soundKey>,<soundKey>,.../<name>.zip
+// The archive is written into the pipe while the other app reads it, so it never exists as a file
+// The provider is not exported, apps can only read the sounds they got with Intent.FLAG_GRANT_READ_URI_PERMISSION
+public class SoundProvider extends ContentProvider {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SOUNDPROVIDER";
+
+    // The authority is the package name with this suffix, it has to match AndroidManifest.xml
+    private static final String AUTHORITY_SUFFIX = ".sounds";
+
+    // The first path segment of an archive uri, sound uris have only two segments
+    private static final String ARCHIVE_PATH = "zip";
+
+    private static final String ARCHIVE_MIME_TYPE = "application/zip";
+
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    // Define how many bytes are written into the pipe at once
+    private static final long CHUNK_SIZE = 64 * 1024;
+
+    // Define how many pipes can be written at the same time
+    private static final int MAX_PIPE_THREADS = 4;
+
+    // Every open pipe needs a thread because writing blocks until the other app reads
+    // Pipes are never queued: a queued pipe would hang forever if the running ones belong to apps that stopped reading
+    // If all threads are busy the pipe is closed and the other app gets an error right away
+    // Idle threads are stopped after a while, so the provider doesn't keep threads alive without shares
+    private static final ThreadPoolExecutor PIPE_EXECUTOR = new ThreadPoolExecutor(0, MAX_PIPE_THREADS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+    // Returns the uri other apps can read the sound from
+    public static Uri getUri(Context context, SoundObject soundObject){
+
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(soundObject.getItemKey())
+                // The file name is shown by the receiving app
+                .appendPath(soundObject.getItemName() + "." + getExtension(context, soundObject.getItemID()))
+                .build();
+    }
+
+    // Returns the uri other apps can read a ZIP archive of several sounds from
+    // name : The file name of the archive without .zip
+    public static Uri getArchiveUri(Context context, List<SoundObject> soundObjects, String name){
+
+        StringBuilder keys = new StringBuilder();
+
+        // Keys are names of raw resources, so they never contain a comma
+        for (SoundObject soundObject : soundObjects){
+
+            if (keys.length() > 0){
+
+                keys.append(',');
+            }
+            keys.append(soundObject.getItemKey());
+        }
+
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(ARCHIVE_PATH)
+                .appendPath(keys.toString())
+                .appendPath(name + ".zip")
+                .build();
+    }
+
+    // Returns the file extension of a raw resource, e.g. "mp3" for res/raw/audio01.mp3
+    public static String getExtension(Context context, int soundID){
+
+        TypedValue value = new TypedValue();
+        context.getResources().getValue(soundID, value, true);
+
+        String path = value.string != null ? value.string.toString() : "";
+        int dot = path.lastIndexOf('.');
+
+        return dot >= 0 ? path.substring(dot + 1).toLowerCase() : "mp3";
+    }
+
+    // Returns the MIME type of a sound with the given file extension
+    public static String getMimeType(String extension){
+
+        switch (extension){
+
+            case "ogg":
+                return "audio/ogg";
+            case "wav":
+                return "audio/wav";
+            default:
+                return "audio/mpeg";
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+
+        if (isArchive(uri))
+            return ARCHIVE_MIME_TYPE;
+
+        String fileName = uri.getLastPathSegment();
+
+        return getMimeType(fileName != null ? fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase() : "");
+    }
+
+    // Returns the name and the size of a sound, many apps show them before they read the sound
+    // The size of an archive is not known before it is written
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+
+        Long size = null;
+
+        try {
+
+            if (isArchive(uri)){
+
+                // Check that all sounds exist
+                getSoundIds(uri);
+            } else {
+
+                AssetFileDescriptor afd = openSound(uri);
+                size = afd.getLength();
+                afd.close();
+            }
+
+        } catch (IOException e){
+
+            Log.e(LOG_TAG, "Failed to query " + uri + ": " + e.getMessage());
+            return null;
+        }
+
+        if (projection == null){
+
+            projection = DEFAULT_PROJECTION;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        Object[] row = new Object[projection.length];
+
+        for (int i = 0; i < projection.length; i++){
+
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i])){
+
+                row[i] = uri.getLastPathSegment();
+            } else if (OpenableColumns.SIZE.equals(projection[i])){
+
+                row[i] = size;
+            }
+        }
+
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    // Returns the read end of a pipe, the sound is written into the other end in the background
+    // ContentResolver.openInputStream() and openFileDescriptor() both end up here
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+
+        if (!"r".equals(mode))
+            throw new FileNotFoundException("Sounds can only be read: " + uri);
+
+        if (isArchive(uri))
+            return openArchive(getSoundIds(uri));
+
+        AssetFileDescriptor sound = openSound(uri);
+
+        try {
+
+            ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+
+            return startPipe(pipe, new PipeWriter(sound, pipe[1]));
+
+        } catch (IOException e){
+
+            try {
+
+                sound.close();
+            } catch (IOException ignored){
+            }
+
+            if (e instanceof FileNotFoundException)
+                throw (FileNotFoundException) e;
+
+            throw new FileNotFoundException("Failed to open pipe: " + e.getMessage());
+        }
+    }
+
+    // Returns the read end of a pipe the ZIP archive of the sounds is written into
+    private ParcelFileDescriptor openArchive(int[] soundIDs) throws FileNotFoundException {
+
+        try {
+
+            ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+
+            return startPipe(pipe, new ArchiveWriter(getContext(), soundIDs, pipe[1]));
+
+        } catch (FileNotFoundException e){
+
+            throw e;
+        } catch (IOException e){
+
+            throw new FileNotFoundException("Failed to open pipe: " + e.getMessage());
+        }
+    }
+
+    // Runs the writer of a pipe on a pipe thread and returns the read end of the pipe
+    // If all pipe threads are busy both ends are closed, so the other app fails right away instead of waiting forever
+    private static ParcelFileDescriptor startPipe(ParcelFileDescriptor[] pipe, Runnable writer) throws FileNotFoundException {
+
+        try {
+
+            PIPE_EXECUTOR.execute(writer);
+
+            return pipe[0];
+
+        } catch (RejectedExecutionException e){
+
+            try {
+
+                pipe[0].close();
+                pipe[1].close();
+            } catch (IOException ignored){
+            }
+
+            throw new FileNotFoundException("All " + MAX_PIPE_THREADS + " pipes are busy");
+        }
+    }
+
+    // Opens the range of the sound in the uri
+    private AssetFileDescriptor openSound(Uri uri) throws FileNotFoundException {
+
+        AssetFileDescriptor sound = getContext().getResources().openRawResourceFd(getSoundId(uri));
+
+        // openRawResourceFd() returns null for resources that are compressed in the APK
+        if (sound == null)
+            throw new FileNotFoundException("Sound is compressed: " + uri);
+
+        return sound;
+    }
+
+    private static boolean isArchive(Uri uri){
+
+        List<String> segments = uri.getPathSegments();
+
+        return segments.size() == 3 && ARCHIVE_PATH.equals(segments.get(0));
+    }
+
+    // Returns the resource ids of the sounds in an archive uri
+    private int[] getSoundIds(Uri uri) throws FileNotFoundException {
+
+        String[] keys = uri.getPathSegments().get(1).split(",");
+        int[] soundIDs = new int[keys.length];
+
+        for (int i = 0; i < keys.length; i++){
+
+            soundIDs[i] = SoundResolver.getInstance(getContext()).getSoundId(keys[i]);
+
+            if (soundIDs[i] == 0)
+                throw new FileNotFoundException("No such sound: " + keys[i]);
+        }
+
+        return soundIDs;
+    }
+
+    // Returns the resource id of the sound in the uri
+    private int getSoundId(Uri uri) throws FileNotFoundException {
+
+        List<String> segments = uri.getPathSegments();
+        int soundID = segments.isEmpty() ? 0 : SoundResolver.getInstance(getContext()).getSoundId(segments.get(0));
+
+        if (soundID == 0)
+            throw new FileNotFoundException("No such sound: " + uri);
+
+        return soundID;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+
+        throw new UnsupportedOperationException("Sounds are read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+
+        throw new UnsupportedOperationException("Sounds are read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+
+        throw new UnsupportedOperationException("Sounds are read only");
+    }
+
+    // Writes a ZIP archive of several sounds into a pipe and closes it afterwards
+    // Every entry is named like the sound button, the sounds are read one after another from their ranges
+    private static class ArchiveWriter implements Runnable {
+
+        private final Context context;
+        private final int[] soundIDs;
+        private final ParcelFileDescriptor pipe;
+
+        ArchiveWriter(Context context, int[] soundIDs, ParcelFileDescriptor pipe){
+
+            this.context = context;
+            this.soundIDs = soundIDs;
+            this.pipe = pipe;
+        }
+
+        @Override
+        public void run() {
+
+            long startTime = SystemClock.elapsedRealtime();
+            ZipOutputStream out = null;
+
+            try {
+
+                out = new ZipOutputStream(new BufferedOutputStream(new ParcelFileDescriptor.AutoCloseOutputStream(pipe), (int) CHUNK_SIZE));
+
+                // Sounds are compressed already, storing them is much faster and hardly larger
+                out.setLevel(Deflater.NO_COMPRESSION);
+
+                SoundResolver soundResolver = SoundResolver.getInstance(context);
+                HashSet<String> entryNames = new HashSet<>();
+                byte[] buffer = new byte[(int) CHUNK_SIZE];
+                long written = 0;
+
+                for (int soundID : soundIDs){
+
+                    String name = getEntryName(soundResolver.getSoundKey(soundID), soundID, entryNames);
+
+                    out.putNextEntry(new ZipEntry(name));
+                    written += copySound(soundID, out, buffer);
+                    out.closeEntry();
+                }
+
+                out.finish();
+
+                Log.i(LOG_TAG, "Streamed " + soundIDs.length + " sounds (" + written + " bytes) as ZIP in "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+            } catch (IOException e){
+
+                // Happens as well if the other app stops reading before the end of the archive
+                Log.d(LOG_TAG, "Pipe closed: " + e.getMessage());
+            } finally {
+
+                try {
+
+                    if (out != null){
+
+                        out.close();
+                    } else {
+
+                        pipe.close();
+                    }
+
+                } catch (IOException e){
+
+                    Log.e(LOG_TAG, "Failed to close pipe: " + e.getMessage());
+                }
+            }
+        }
+
+        // Returns the name of the sound button as file name, sounds with the same name get a number
+        private String getEntryName(String soundKey, int soundID, HashSet<String> entryNames){
+
+            String name = SoundResolver.getInstance(context).getSoundName(soundKey);
+
+            // Sounds that are not in the SoundCatalog are named after their key
+            if (name == null){
+
+                name = soundKey;
+            }
+
+            // Keep the names valid on all file systems
+            name = name.replaceAll("[\\\\/:*?\"<>|]", "_");
+
+            String extension = "." + getExtension(context, soundID);
+            String entryName = name + extension;
+
+            for (int number = 2; !entryNames.add(entryName); number++){
+
+                entryName = name + " (" + number + ")" + extension;
+            }
+
+            return entryName;
+        }
+
+        // Copies the range of a sound into the archive and returns the number of bytes
+        private long copySound(int soundID, ZipOutputStream out, byte[] buffer) throws IOException {
+
+            AssetFileDescriptor sound = context.getResources().openRawResourceFd(soundID);
+
+            // openRawResourceFd() returns null for resources that are compressed in the APK
+            if (sound == null)
+                throw new IOException("Sound " + soundID + " is compressed");
+
+            FileInputStream in = null;
+
+            try {
+
+                in = new FileInputStream(sound.getFileDescriptor());
+                FileChannel source = in.getChannel();
+
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                long length = sound.getLength();
+                long copied = 0;
+
+                while (copied < length){
+
+                    byteBuffer.clear();
+                    byteBuffer.limit((int) Math.min(buffer.length, length - copied));
+
+                    // Read from an absolute position, the file descriptor may be shared with other readers
+                    int read = source.read(byteBuffer, sound.getStartOffset() + copied);
+
+                    if (read <= 0)
+                        throw new IOException("Unexpected end of sound after " + copied + " of " + length + " bytes");
+
+                    out.write(buffer, 0, read);
+                    copied += read;
+                }
+
+                return copied;
+
+            } finally {
+
+                if (in != null){
+
+                    in.close();
+                }
+                sound.close();
+            }
+        }
+    }
+
+    // Writes the range of a sound into a pipe and closes both afterwards
+    private static class PipeWriter implements Runnable {
+
+        private final AssetFileDescriptor sound;
+        private final ParcelFileDescriptor pipe;
+
+        PipeWriter(AssetFileDescriptor sound, ParcelFileDescriptor pipe){
+
+            this.sound = sound;
+            this.pipe = pipe;
+        }
+
+        @Override
+        public void run() {
+
+            FileInputStream in = null;
+            FileOutputStream out = null;
+
+            try {
+
+                in = new FileInputStream(sound.getFileDescriptor());
+                out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe);
+
+                FileChannel source = in.getChannel();
+                FileChannel target = out.getChannel();
+
+                long length = sound.getLength();
+                long written = 0;
+
+                while (written < length){
+
+                    // transferTo() reads from an absolute position of the APK without a Java buffer
+                    long transferred = source.transferTo(sound.getStartOffset() + written, Math.min(CHUNK_SIZE, length - written), target);
+
+                    if (transferred <= 0)
+                        break;
+
+                    written += transferred;
+                }
+
+            } catch (IOException e){
+
+                // Happens as well if the other app stops reading before the end of the sound
+                Log.d(LOG_TAG, "Pipe closed: " + e.getMessage());
+            } finally {
+
+                try {
+
+                    if (in != null){
+
+                        in.close();
+                    }
+
+                    if (out != null){
+
+                        out.close();
+                    } else {
+
+                        pipe.close();
+                    }
+
+                    sound.close();
+
+                } catch (IOException e){
+
+                    Log.e(LOG_TAG, "Failed to close pipe: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
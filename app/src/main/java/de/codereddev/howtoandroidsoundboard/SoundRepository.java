@@ -0,0 +1,383 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Owns the sounds of the whole app in memory so the activities don't read them from the database again
+// The catalog is a PagedSoundList that keeps its pages as long as the app is running
+// Each catalog is a snapshot of one version of the sound collection, its rows never change, only which pages are in memory
+// When the sound collection in the database changes, invalidateCatalog() drops it and the next one gets a higher version
+// The favorites are kept as an immutable list sorted by name, every change publishes a new list to the observers
+// All methods have to be called on the UI thread
+public class SoundRepository implements PagedSoundList.Listener, FavoritesStore.Observer {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SOUNDREPOSITORY";
+
+    // Gets notified about all changes of the sounds on the UI thread
+    // Every method has an empty default so an observer only overrides what it needs
+    public abstract static class Observer {
+
+        // Gets called when the number of sounds in the catalog and its first page are known
+        public void onCatalogLoaded(List<SoundObject> catalog){
+        }
+
+        // Gets called when a page of the catalog has been loaded, the rows between start and start + count are not null anymore
+        public void onCatalogPageLoaded(int start, int count){
+        }
+
+        // Gets called with the new list of favorites when it has been loaded or changed
+        public void onFavoritesChanged(List<SoundObject> favorites){
+        }
+    }
+
+    // Sorts SoundObjects like the database does: by name and by key for sounds with the same name
+    private static final Comparator<SoundObject> BY_NAME = new Comparator<SoundObject>() {
+        @Override
+        public int compare(SoundObject a, SoundObject b) {
+
+            int comparison = a.getItemName().compareTo(b.getItemName());
+
+            return comparison != 0 ? comparison : a.getItemKey().compareTo(b.getItemKey());
+        }
+    };
+
+    // There is only one SoundRepository for the whole app so all activities share the sounds
+    private static SoundRepository instance;
+
+    // Returns the SoundRepository of the app and creates it if it does not exist yet
+    public static synchronized SoundRepository getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new SoundRepository(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private final SoundResolver soundResolver;
+    private final FavoritesStore favoritesStore;
+
+    private final ArrayList<Observer> observers = new ArrayList<>();
+
+    private PagedSoundList catalog;
+    private int catalogVersion;
+    private boolean catalogLoaded;
+    private long catalogLoadTime = -1;
+    private long catalogLoadStart;
+
+    // Immutable list of all favorites, null until it has been loaded
+    private List<SoundObject> favorites;
+    private boolean favoritesLoading;
+    private long favoritesLoadTime = -1;
+
+    // Favorites that were added or removed while the favorites were loaded by their keys, they are applied afterwards
+    private final LinkedHashMap<String, SoundObject> addedWhileLoading = new LinkedHashMap<>();
+    private final LinkedHashMap<String, SoundObject> removedWhileLoading = new LinkedHashMap<>();
+
+    // Count how often a list could be handed out from memory
+    private int hitCount;
+    private int missCount;
+
+    private SoundRepository(Context context){
+
+        databaseHandler = DatabaseHandler.getInstance(context);
+        soundResolver = SoundResolver.getInstance(context);
+        favoritesStore = FavoritesStore.getInstance(context);
+
+        // Keep the favorites up to date without reading them again
+        favoritesStore.registerObserver(this);
+    }
+
+    public void registerObserver(Observer observer){
+
+        if (!observers.contains(observer)){
+
+            observers.add(observer);
+        }
+    }
+
+    // Don't forget to unregister an observer, e.g. when the activity is destroyed
+    public void unregisterObserver(Observer observer){
+
+        observers.remove(observer);
+    }
+
+    // Returns the catalog of all sounds
+    // The list is empty until Observer.onCatalogLoaded() gets called, isCatalogLoaded() tells if that happened already
+    public List<SoundObject> getCatalog(){
+
+        if (catalog == null){
+
+            missCount++;
+
+            catalogLoadStart = SystemClock.elapsedRealtime();
+            catalog = new PagedSoundList(databaseHandler, soundResolver, this);
+            catalog.load();
+
+        } else if (catalogLoaded){
+
+            hitCount++;
+        }
+
+        return catalog;
+    }
+
+    public boolean isCatalogLoaded(){
+
+        return catalogLoaded;
+    }
+
+    // Returns the version of the catalog getCatalog() hands out, it increases every time the catalog is invalidated
+    public int getCatalogVersion(){
+
+        return catalogVersion;
+    }
+
+    // Drops the catalog and the favorites after the sound collection in the database has been changed
+    // The next getCatalog() reads a new snapshot, lists that were handed out before stop loading pages
+    public void invalidateCatalog(){
+
+        catalogVersion++;
+
+        if (catalog != null){
+
+            catalog.close();
+            catalog = null;
+            catalogLoaded = false;
+            catalogLoadTime = -1;
+        }
+
+        // A loader that is still running publishes the favorites it reads after the change
+        if (!favoritesLoading){
+
+            favorites = null;
+            favoritesLoadTime = -1;
+        }
+    }
+
+    // Returns the immutable list of all favorites or null if it is not in memory yet
+    // In that case it is loaded and handed to Observer.onFavoritesChanged()
+    public List<SoundObject> getFavorites(){
+
+        if (favorites != null){
+
+            hitCount++;
+            return favorites;
+        }
+
+        missCount++;
+
+        if (!favoritesLoading){
+
+            favoritesLoading = true;
+
+            // Favorites that were changed a moment ago are written before the FAVORITES_TABLE is read
+            favoritesStore.flush(new Runnable() {
+                @Override
+                public void run() {
+
+                    new FavoritesLoader().execute();
+                }
+            });
+        }
+
+        return null;
+    }
+
+    @Override
+    public void onListLoaded(PagedSoundList list) {
+
+        catalogLoaded = true;
+        catalogLoadTime = SystemClock.elapsedRealtime() - catalogLoadStart;
+
+        Log.d(LOG_TAG, "Loaded catalog of " + list.size() + " sounds in " + catalogLoadTime + " ms");
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onCatalogLoaded(list);
+        }
+    }
+
+    @Override
+    public void onPageLoaded(PagedSoundList list, int start, int count) {
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onCatalogPageLoaded(start, count);
+        }
+    }
+
+    @Override
+    public void onFavoriteAdded(SoundObject soundObject) {
+
+        if (favorites == null){
+
+            if (favoritesLoading){
+
+                removedWhileLoading.remove(soundObject.getItemKey());
+                addedWhileLoading.put(soundObject.getItemKey(), soundObject);
+            }
+            return;
+        }
+
+        ArrayList<SoundObject> changed = new ArrayList<>(favorites);
+
+        // Keep the list sorted, the position is found by binary search
+        int position = Collections.binarySearch(changed, soundObject, BY_NAME);
+
+        if (position < 0){
+
+            changed.add(-position - 1, soundObject);
+            publishFavorites(changed);
+        }
+    }
+
+    @Override
+    public void onFavoriteRemoved(SoundObject soundObject) {
+
+        if (favorites == null){
+
+            if (favoritesLoading){
+
+                addedWhileLoading.remove(soundObject.getItemKey());
+                removedWhileLoading.put(soundObject.getItemKey(), soundObject);
+            }
+            return;
+        }
+
+        ArrayList<SoundObject> changed = new ArrayList<>(favorites);
+
+        int position = Collections.binarySearch(changed, soundObject, BY_NAME);
+
+        if (position >= 0){
+
+            changed.remove(position);
+            publishFavorites(changed);
+        }
+    }
+
+    @Override
+    public void onFavoritesLoaded() {
+
+        // The favorites are read by their own query after the FavoritesStore has written its changes
+    }
+
+    // Replaces the list of favorites and hands it to all observers
+    private void publishFavorites(ArrayList<SoundObject> changed){
+
+        favorites = Collections.unmodifiableList(changed);
+
+        for (Observer observer : new ArrayList<>(observers)){
+            observer.onFavoritesChanged(favorites);
+        }
+    }
+
+    public int getHitCount(){
+
+        return hitCount;
+    }
+
+    public int getMissCount(){
+
+        return missCount;
+    }
+
+    // Returns how long it took to load the catalog or -1 if it is not loaded yet
+    public long getCatalogLoadTime(){
+
+        return catalogLoadTime;
+    }
+
+    // Returns how long it took to load the favorites or -1 if they are not loaded yet
+    public long getFavoritesLoadTime(){
+
+        return favoritesLoadTime;
+    }
+
+    @Override
+    public String toString(){
+
+        return "SoundRepository[catalog=" + (catalog != null ? catalog.size() : 0)
+                + " sounds in " + catalogLoadTime + " ms"
+                + ", favorites=" + (favorites != null ? favorites.size() : 0)
+                + " sounds in " + favoritesLoadTime + " ms"
+                + ", hits=" + hitCount
+                + ", misses=" + missCount
+                + (catalog != null ? ", catalog page hits=" + catalog.getHitCount() + ", catalog page misses=" + catalog.getMissCount() : "") + "]";
+    }
+
+    // Reads all favorites from the database once
+    private class FavoritesLoader extends AsyncTask<Void, Void, ArrayList<SoundObject>> {
+
+        private final long startTime = SystemClock.elapsedRealtime();
+
+        @Override
+        protected ArrayList<SoundObject> doInBackground(Void... params) {
+
+            ArrayList<SoundObject> loaded = new ArrayList<>();
+            Cursor cursor = null;
+
+            try {
+
+                cursor = databaseHandler.getFavorites();
+
+                int nameIndex = cursor.getColumnIndex("soundName");
+                int keyIndex = cursor.getColumnIndex("soundKey");
+
+                while (cursor.moveToNext()){
+
+                    // The resource id of the sound is resolved from its key
+                    loaded.add(soundResolver.createSoundObject(cursor.getString(nameIndex), cursor.getString(keyIndex)));
+                }
+
+            } catch (Exception e){
+
+                Log.e(LOG_TAG, "Failed to load favorites: " + e.getMessage());
+            } finally {
+
+                if (cursor != null){
+
+                    cursor.close();
+                }
+            }
+
+            // The database and BY_NAME may sort sounds with the same name differently
+            Collections.sort(loaded, BY_NAME);
+
+            return loaded;
+        }
+
+        @Override
+        protected void onPostExecute(ArrayList<SoundObject> loaded) {
+
+            favoritesLoading = false;
+            favoritesLoadTime = SystemClock.elapsedRealtime() - startTime;
+
+            Log.d(LOG_TAG, "Loaded " + loaded.size() + " favorites in " + favoritesLoadTime + " ms");
+
+            publishFavorites(loaded);
+
+            // Apply the changes the loaded favorites may not contain
+            for (SoundObject soundObject : removedWhileLoading.values()){
+                onFavoriteRemoved(soundObject);
+            }
+            for (SoundObject soundObject : addedWhileLoading.values()){
+                onFavoriteAdded(soundObject);
+            }
+
+            removedWhileLoading.clear();
+            addedWhileLoading.clear();
+        }
+    }
+}
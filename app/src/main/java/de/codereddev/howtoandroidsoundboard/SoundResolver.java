@@ -0,0 +1,81 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import java.util.HashMap;
+
+// Converts the keys that identify sounds in the database into resource ids and back
+// Knows the names of the sounds of the SoundCatalog as well, e.g. to name shared files
+// The keys of the SoundCatalog are known from the start, every other key is looked up only once
+// The result is cached for the lifetime of the app process
+public class SoundResolver {
+
+    // There is only one SoundResolver for the whole app so all activities share the cache
+    private static SoundResolver instance;
+
+    // Returns the SoundResolver of the app and creates it if it does not exist yet
+    public static synchronized SoundResolver getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new SoundResolver(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private final Resources resources;
+    private final String packageName;
+
+    // Maps every key that has been resolved to its resource id
+    private final HashMap<String, Integer> soundIds = new HashMap<>();
+
+    // Maps the keys of the SoundCatalog to the names of their sounds, it is not changed after the constructor
+    private final HashMap<String, String> soundNames = new HashMap<>();
+
+    private SoundResolver(Context context){
+
+        this.resources = context.getResources();
+        this.packageName = context.getPackageName();
+
+        // All sounds of the SoundCatalog are known at build time, only unknown keys have to be looked up
+        for (int i = 0; i < SoundCatalog.SIZE; i++){
+            soundIds.put(SoundCatalog.KEYS[i], SoundCatalog.IDS[i]);
+            soundNames.put(SoundCatalog.KEYS[i], SoundCatalog.NAMES[i]);
+        }
+    }
+
+    // Returns the resource id of the raw file with the given key or 0 if there is no such file
+    public synchronized int getSoundId(String soundKey){
+
+        Integer soundID = soundIds.get(soundKey);
+
+        if (soundID == null){
+
+            soundID = resources.getIdentifier(soundKey, "raw", packageName);
+            soundIds.put(soundKey, soundID);
+        }
+
+        return soundID;
+    }
+
+    // Returns the key of a raw resource id, e.g. "audio01" for R.raw.audio01
+    public String getSoundKey(int soundID){
+
+        return resources.getResourceEntryName(soundID);
+    }
+
+    // Returns the name of the sound with the given key or null if it is not in the SoundCatalog
+    public String getSoundName(String soundKey){
+
+        return soundNames.get(soundKey);
+    }
+
+    // Creates a SoundObject from a name and a key as they are stored in the database
+    public SoundObject createSoundObject(String soundName, String soundKey){
+
+        return new SoundObject(soundName, soundKey, getSoundId(soundKey));
+    }
+}
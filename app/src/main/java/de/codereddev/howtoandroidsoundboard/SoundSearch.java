@@ -0,0 +1,155 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Searches the names of all sounds while the user types
+// A search starts DEBOUNCE_MS after the last change of the text and a search for an outdated text is cancelled
+// All methods have to be called on the UI thread
+public class SoundSearch {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SOUNDSEARCH";
+
+    // Define how long the text has to stay unchanged before it is searched
+    public static final long DEBOUNCE_MS = 150;
+
+    // Define how many sounds a search returns at most
+    public static final int MAX_RESULTS = 500;
+
+    // Receives the results of a search on the UI thread
+    public interface Callback {
+
+        // Gets called with the sounds whose names match the text, sorted by name
+        void onSearchResults(String text, List<SoundObject> sounds);
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private final SoundResolver soundResolver;
+    private final Callback callback;
+
+    private final Handler handler = new Handler();
+
+    // The text that is searched after the debounce delay
+    private String pendingText;
+
+    // The search that is running right now
+    private SearchTask searchTask;
+
+    private final Runnable startSearch = new Runnable() {
+        @Override
+        public void run() {
+
+            searchTask = new SearchTask(pendingText);
+            // Don't wait for the PagedSoundList pages that are read on the serial executor
+            searchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    };
+
+    public SoundSearch(DatabaseHandler databaseHandler, SoundResolver soundResolver, Callback callback){
+
+        this.databaseHandler = databaseHandler;
+        this.soundResolver = soundResolver;
+        this.callback = callback;
+    }
+
+    // Searches the text after the debounce delay
+    // The results of earlier texts are not delivered anymore
+    public void search(String text){
+
+        cancel();
+
+        pendingText = text;
+        handler.postDelayed(startSearch, DEBOUNCE_MS);
+    }
+
+    // Stops the search that is waiting or running, e.g. when the search is closed
+    public void cancel(){
+
+        handler.removeCallbacks(startSearch);
+
+        if (searchTask != null){
+
+            searchTask.stop();
+            searchTask = null;
+        }
+    }
+
+    // Reads the results of one search
+    private class SearchTask extends AsyncTask<Void, Void, List<SoundObject>> {
+
+        private final String text;
+        private final CancellationSignal cancellationSignal = new CancellationSignal();
+
+        SearchTask(String text){
+
+            this.text = text;
+        }
+
+        // Cancels the query in SQLite as well, not only the delivery of the results
+        void stop(){
+
+            cancel(false);
+            cancellationSignal.cancel();
+        }
+
+        @Override
+        protected List<SoundObject> doInBackground(Void... params) {
+
+            long startTime = SystemClock.elapsedRealtime();
+
+            ArrayList<SoundObject> sounds = new ArrayList<>();
+            Cursor cursor = null;
+
+            try {
+
+                cursor = databaseHandler.searchSounds(text, MAX_RESULTS, cancellationSignal);
+
+                int nameIndex = cursor.getColumnIndex("soundName");
+                int keyIndex = cursor.getColumnIndex("soundKey");
+
+                while (!isCancelled() && cursor.moveToNext()){
+
+                    // The resource id of the sound is resolved from its key
+                    sounds.add(soundResolver.createSoundObject(cursor.getString(nameIndex), cursor.getString(keyIndex)));
+                }
+
+                Log.d(LOG_TAG, "Found " + sounds.size() + " sounds for '" + text + "' in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+            } catch (OperationCanceledException e){
+
+                // A newer text is searched already
+                return null;
+            } catch (Exception e){
+
+                Log.e(LOG_TAG, "Failed to search sounds: " + e.getMessage());
+            } finally {
+
+                if (cursor != null){
+
+                    cursor.close();
+                }
+            }
+
+            return sounds;
+        }
+
+        @Override
+        protected void onPostExecute(List<SoundObject> sounds) {
+
+            if (searchTask != this || sounds == null)
+                return;
+
+            searchTask = null;
+            callback.onSearchResults(text, sounds);
+        }
+    }
+}
@@ -1,28 +1,30 @@
 package de.codereddev.howtoandroidsoundboard;
 
-import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.support.design.widget.Snackbar;
-import android.support.v4.app.ActivityCompat;
-import android.support.v4.content.ContextCompat;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
-import java.util.ArrayList;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
 
 public class SoundboardActivity extends AppCompatActivity {
 
@@ -32,33 +34,153 @@ public class SoundboardActivity extends AppCompatActivity {
     // Declare a toolbar to use instead of the system standard toolbar
     Toolbar toolbar;
 
-    // Declare an ArrayList that you fill with SoundObjects that contain all information needed for a sound button
-    ArrayList<SoundObject> soundList = new ArrayList<>();
+    // Declare a List that contains the SoundObjects with all information needed for a sound button
+    // It is the catalog of the SoundRepository that reads the sounds page by page
+    // The list stays empty until the database has been filled
+    List<SoundObject> soundList = Collections.emptyList();
 
     // Declare a RecyclerView and its components
     // You can assign the RecyclerView.Adapter right away
     RecyclerView SoundView;
-    SoundboardRecyclerAdapter SoundAdapter = new SoundboardRecyclerAdapter(soundList);
+    SoundboardRecyclerAdapter SoundAdapter = new SoundboardRecyclerAdapter(Collections.<SoundObject>emptyList());
     RecyclerView.LayoutManager SoundLayoutManager;
 
+    // Declare a SoundSearch that searches the sound names while the user types into the SearchView of the toolbar
+    private SoundSearch soundSearch;
+
+    // True while the RecyclerView shows the results of a search instead of the soundList
+    private boolean showingSearchResults;
+
     // Declare a View that will contain the layout of the activity and serves as the parent of a Snackbar
     private View mLayout;
 
     // Declare a DatabaseHandler to support database usage
-    DatabaseHandler databaseHandler = new DatabaseHandler(this);
+    DatabaseHandler databaseHandler;
+
+    // Declare the FavoritesStore that contains all favorites in memory and writes the changes to the database
+    FavoritesStore favoritesStore;
+
+    // Declare the SoundRepository that keeps the sounds of the whole app in memory
+    SoundRepository soundRepository;
+
+    // Declare the task that fills the database in the background
+    // It is shared by all instances of the activity, so a sync that is still running when the activity is recreated is not started again
+    private static SyncTask syncTask;
+
+    // True after the database has been filled once in this process
+    private static boolean synced;
+
+    // Shows the catalog of the SoundRepository as soon as it is loaded
+    private final SoundRepository.Observer repositoryObserver = new SoundRepository.Observer() {
+        @Override
+        public void onCatalogLoaded(List<SoundObject> catalog) {
+
+            // The list is shown when the user closes the search
+            if (!showingSearchResults){
+
+                SoundAdapter.submitList(catalog);
+            }
+        }
+
+        @Override
+        public void onCatalogPageLoaded(int start, int count) {
+
+            // Bind the buttons that were displayed empty while their page was loading
+            if (!showingSearchResults){
+
+                SoundAdapter.notifyItemRangeChanged(start, count);
+            }
+        }
+    };
+
+    // Declare the ActionMode that shows the actions for the selected sounds in place of the toolbar
+    private ActionMode selectionMode;
+
+    // Handles the actions for all sounds the user has selected
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+
+            mode.getMenuInflater().inflate(R.menu.selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+
+            List<SoundObject> selectedSounds = SoundAdapter.getSelectedSounds();
+
+            switch (item.getItemId()){
+
+                // Send all sounds as one ZIP archive, nothing is written to the storage
+                case R.id.action_selection_send:
+                    EventHandlerClass.shareSounds(SoundboardActivity.this, selectedSounds);
+                    break;
+                // All favorites are written in one transaction
+                case R.id.action_selection_favorite:
+                    favoritesStore.addFavorites(selectedSounds);
+                    break;
+                case R.id.action_selection_removefavorite:
+                    favoritesStore.removeFavorites(selectedSounds);
+                    break;
+                default:
+                    return false;
+            }
+
+            mode.finish();
+            return true;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+
+            selectionMode = null;
+            SoundAdapter.clearSelection();
+        }
+    };
+
+    // Updates the favorite mark of a sound button when the user adds or removes a favorite
+    private final FavoritesStore.Observer favoritesObserver = new FavoritesStore.Observer() {
+        @Override
+        public void onFavoriteAdded(SoundObject soundObject) {
+
+            SoundAdapter.notifySoundChanged(soundObject.getItemKey());
+        }
+
+        @Override
+        public void onFavoriteRemoved(SoundObject soundObject) {
+
+            SoundAdapter.notifySoundChanged(soundObject.getItemKey());
+        }
+
+        @Override
+        public void onFavoritesLoaded() {
+
+            // Show the favorite marks of the buttons that were bound before the favorites were known
+            SoundAdapter.notifyItemRangeChanged(0, SoundAdapter.getItemCount());
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_soundboard);
 
-        // If the gets an update or runs for the first time fill the database with all SoundObjects
-        if (appUpdate()){
+        // Keep the SoundEngine alive while this activity exists
+        EventHandlerClass.acquireSoundEngine();
 
-            databaseHandler.createSoundCollection(this);
+        // Get the DatabaseHandler that is shared by the whole app
+        databaseHandler = DatabaseHandler.getInstance(this);
 
-            databaseHandler.updateFavorites();
-        }
+        // Get notified when the user adds or removes a favorite
+        favoritesStore = FavoritesStore.getInstance(this);
+        favoritesStore.registerObserver(favoritesObserver);
 
         // Assign layout view
         // Take a look at activity_soundboard.xml change the id
@@ -70,8 +192,24 @@ public class SoundboardActivity extends AppCompatActivity {
         // Set toolbar as new action bar
         setSupportActionBar(toolbar);
 
-        // Calls a method that adds data from a database to the soundList
-        addDataToArrayList();
+        // Calls a method that reads the sounds from the database page by page as soon as the database is filled
+        soundRepository = SoundRepository.getInstance(this);
+        soundRepository.registerObserver(repositoryObserver);
+
+        if (synced){
+
+            loadSoundList();
+        } else {
+
+            if (syncTask == null){
+
+                syncTask = new SyncTask(getApplicationContext());
+                syncTask.execute();
+            }
+
+            // The grid is filled by the task when it is done
+            syncTask.attach(this);
+        }
 
         // Assign SoundView to the RecyclerView item declared in activity_soundboard.xml
         SoundView = (RecyclerView) findViewById(R.id.soundboardRecyclerView);
@@ -85,6 +223,42 @@ public class SoundboardActivity extends AppCompatActivity {
         // Set the RecyclerView.Adapter
         SoundView.setAdapter(SoundAdapter);
 
+        // Let the user select several sounds, the actions for them are shown in an ActionMode
+        SoundAdapter.setSelectionListener(new SoundboardRecyclerAdapter.SelectionListener() {
+            @Override
+            public void onSelectionChanged(int count) {
+
+                if (count == 0){
+
+                    if (selectionMode != null){
+
+                        selectionMode.finish();
+                    }
+                    return;
+                }
+
+                if (selectionMode == null){
+
+                    selectionMode = startSupportActionMode(selectionCallback);
+                }
+
+                selectionMode.setTitle(getString(R.string.selection_count, count));
+            }
+        });
+
+        // The results of a search replace the soundList in the RecyclerView
+        soundSearch = new SoundSearch(databaseHandler, SoundResolver.getInstance(this), new SoundSearch.Callback() {
+            @Override
+            public void onSearchResults(String text, List<SoundObject> sounds) {
+
+                showingSearchResults = true;
+                SoundAdapter.submitList(sounds);
+            }
+        });
+
+        // Preload the sounds of all visible buttons before the user taps them
+        SoundView.addOnScrollListener(new PreloadScrollListener(this, (GridLayoutManager) SoundLayoutManager, SoundAdapter));
+
         // Calls a method that handles all permission events
         requestPermissions();
     }
@@ -96,6 +270,48 @@ public class SoundboardActivity extends AppCompatActivity {
         // Inflate the layout
         getMenuInflater().inflate(R.menu.toolbar_menu, menu);
 
+        // Search the sounds while the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+
+                if (newText.trim().isEmpty()){
+
+                    // Show all sounds again
+                    showSoundList();
+                } else {
+
+                    soundSearch.search(newText);
+                }
+                return true;
+            }
+        });
+
+        // Show all sounds again when the search is closed
+        MenuItemCompat.setOnActionExpandListener(searchItem, new MenuItemCompat.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+
+                showSoundList();
+                return true;
+            }
+        });
+
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -108,45 +324,47 @@ public class SoundboardActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
-    // Takes care of some things when the user closes the activity
     @Override
-    protected void onDestroy(){
-        super.onDestroy();
+    protected void onStop(){
+        super.onStop();
 
-        // Calls a method that releases all data from the used MediaPlayer instance
-        EventHandlerClass.releaseMediaPlayer();
+        // Write all favorite changes before the app may be closed
+        favoritesStore.flush();
     }
 
-    // Fill the soundList with all information given in the MAIN_TABLE
-    private void addDataToArrayList(){
-
-        soundList.clear();
+    // Takes care of some things when the user closes the activity
+    @Override
+    protected void onDestroy(){
+        super.onDestroy();
 
-        // Get a cursor filled with all information from the MAIN_TABLE
-        Cursor cursor = databaseHandler.getSoundCollection();
+        // The catalog stays in the SoundRepository for the next time the activity is opened
+        soundRepository.unregisterObserver(repositoryObserver);
+        soundSearch.cancel();
+        favoritesStore.unregisterObserver(favoritesObserver);
 
-        // Check if the cursor is empty or failed to convert the data
-        if (cursor.getCount() == 0){
+        // Calls a method that releases all data from the SoundEngine if no other activity uses it
+        EventHandlerClass.releaseSoundEngine();
+    }
 
-            Log.e(LOG_TAG, "Cursor is empty or failed to convert data");
-            cursor.close();
-        }
+    // Replaces the search results in the RecyclerView with the soundList
+    private void showSoundList(){
 
-        // Prevent the method from adding SoundObjects again everytime the Activity starts
-        if (cursor.getCount() != soundList.size() ){
+        soundSearch.cancel();
 
-            // Add each item of MAIN_TABLE to soundList and refresh the RecyclerView by notifying the adapter about changes
-            while (cursor.moveToNext() ){
+        showingSearchResults = false;
+        SoundAdapter.submitList(soundList);
+    }
 
-                String NAME = cursor.getString(cursor.getColumnIndex("soundName"));
-                Integer ID = cursor.getInt(cursor.getColumnIndex("soundId"));
+    // Get the catalog with the information given in the MAIN_TABLE from the SoundRepository
+    // Only the number of sounds and the first page are read up front, the other pages are read while the user scrolls
+    // The catalog stays in memory, if the activity has been opened before its pages are shown right away
+    private void loadSoundList(){
 
-                soundList.add(new SoundObject(NAME, ID));
+        soundList = soundRepository.getCatalog();
 
-                SoundAdapter.notifyDataSetChanged();
-            }
+        if (soundRepository.isCatalogLoaded()){
 
-            cursor.close();
+            SoundAdapter.submitList(soundList);
         }
     }
 
@@ -157,16 +375,8 @@ public class SoundboardActivity extends AppCompatActivity {
         // Since Android 6 you have to request permissions at runtime to provide a better security
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M){
 
-            // Check if the permission to write and read the users external storage is not granted
-            // You need this permission if you want to share sounds via WhatsApp or the like
-            if (ContextCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED){
-
-                // You can log this little text if you want to see if this method works in your Android Monitor
-                //Log.i(LOG_TAG, "Permission not granted");
-
-                // If the permission is not granted request it
-                ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, 0);
-            }
+            // The permission to write the external storage is not requested here anymore
+            // Shared sounds are streamed by the SoundProvider, it is only requested when a sound is set as ringtone (see EventHandlerClass.java)
 
             // Check if the permission to write the users settings is not granted
             // You need this permission to set a sound as ringtone or the like
@@ -190,58 +400,116 @@ public class SoundboardActivity extends AppCompatActivity {
         }
     }
 
-    // Check if the app has been updated
-    private boolean appUpdate(){
+    // We are saving the current app version into a preference file
+    // There are two ways to get a handle to a SharedPreferences, we are creating a unique preference file that is not bound to a context
+    // Check the android developer documentation if you want to find out more
+
+    // Define a name for the preference file and a key name to save the version code to it
+    private static final String PREFS_NAME = "VersionPref";
+    private static final String PREF_VERSION_CODE_KEY = "version_code";
 
-        // We are saving the current app version into a preference file
-        // There are two ways to get a handle to a SharedPreferences, we are creating a unique preference file that is not bound to a context
-        // Check the android developer documentation if you want to find out more
+    // Check if the app has been updated or runs for the first time
+    private static boolean appUpdate(Context context){
 
-        // Define a name for the preference file and a key name to save the version code to it
-        final String PREFS_NAME = "VersionPref";
-        final String PREF_VERSION_CODE_KEY = "version_code";
         // Define a value that is set if the key does not exist
         final int DOESNT_EXIST = -1;
 
-        // Get the current version code from the package
+        // Get the SharedPreferences from the preference file
+        // Creates the preference file if it does not exist
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        // Get the saved version code
+        int savedVersionCode = prefs.getInt(PREF_VERSION_CODE_KEY, DOESNT_EXIST);
+
+        //Check for updates
+        // DOESNT_EXIST means it is the first run of the app
+        return savedVersionCode == DOESNT_EXIST || getVersionCode(context) > savedVersionCode;
+    }
+
+    // Saves the current version code after the database has been updated to it
+    private static void saveVersionCode(Context context){
+
+        SharedPreferences.Editor edit = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit();
+        edit.putInt(PREF_VERSION_CODE_KEY, getVersionCode(context));
+        edit.commit();
+    }
+
+    // Get the current version code from the package
+    private static int getVersionCode(Context context){
+
         int currentVersionCode = 0;
         try{
 
-            currentVersionCode = getPackageManager().getPackageInfo(getPackageName(), 0).versionCode;
+            currentVersionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
 
         } catch (PackageManager.NameNotFoundException e){
 
             Log.e(LOG_TAG, e.getMessage());
         }
 
-        // Get the SharedPreferences from the preference file
-        // Creates the preference file if it does not exist
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        // Get the saved version code or set it if it does not exist
-        int savedVersionCode = prefs.getInt(PREF_VERSION_CODE_KEY, DOESNT_EXIST);
+        return currentVersionCode;
+    }
 
-        // Create an editor to edit the shared preferences on app update
-        SharedPreferences.Editor edit = prefs.edit();
+    // Fills the database with all SoundObjects in the background if the app gets an update or runs for the first time
+    // Favorites reference the sounds by their key so they stay valid without any update
+    // Only the differences to the stored sounds are written
+    // The new version code is saved after the sync succeeded, so an interrupted sync is done again on the next start
+    private static class SyncTask extends AsyncTask<Void, Void, Boolean> {
 
-        //Check for updates
-        if (savedVersionCode == DOESNT_EXIST){
+        // Use the application context so no activity is leaked while the database is filled
+        private final Context context;
 
-            databaseHandler.appUpdate();
-            // First run of the app
-            // Set the saved version code to the current version code
-            edit.putInt(PREF_VERSION_CODE_KEY, currentVersionCode);
-            edit.commit();
-            return true;
+        // The activity that shows the sounds when the task is done, it is replaced when the activity is recreated
+        private WeakReference<SoundboardActivity> activity;
+
+        SyncTask(Context context){
+
+            this.context = context;
+        }
+
+        void attach(SoundboardActivity activity){
+
+            this.activity = new WeakReference<>(activity);
         }
-        else if (currentVersionCode > savedVersionCode){
 
-            // App update
-            databaseHandler.appUpdate();
-            edit.putInt(PREF_VERSION_CODE_KEY, currentVersionCode);
-            edit.commit();
+        // Returns true if the sound collection has been changed
+        @Override
+        protected Boolean doInBackground(Void... params) {
+
+            DatabaseHandler databaseHandler = DatabaseHandler.getInstance(context);
+
+            if (!appUpdate(context) && !databaseHandler.isSoundCollectionEmpty())
+                return false;
+
+            if (databaseHandler.createSoundCollection()){
+
+                saveVersionCode(context);
+            }
+
             return true;
         }
 
-        return false;
+        @Override
+        protected void onPostExecute(Boolean changed) {
+
+            syncTask = null;
+            synced = true;
+
+            if (changed){
+
+                // A catalog that has been read before the sync may contain sounds that are gone now
+                SoundRepository.getInstance(context).invalidateCatalog();
+
+                // The ExportCache deletes the saved files of changed or removed sounds in the background when it is created
+                ExportCache.getInstance(context);
+            }
+
+            SoundboardActivity soundboardActivity = activity != null ? activity.get() : null;
+
+            // Show the sounds if the activity has not been closed in the meantime
+            if (soundboardActivity != null && !soundboardActivity.isFinishing() && !soundboardActivity.isDestroyed()){
+
+                soundboardActivity.loadSoundList();
+            }
+        }
     }
 }
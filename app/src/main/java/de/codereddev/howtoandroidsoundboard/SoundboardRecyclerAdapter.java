@@ -1,24 +1,52 @@
 package de.codereddev.howtoandroidsoundboard;
 
+import android.os.AsyncTask;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 public class SoundboardRecyclerAdapter extends RecyclerView.Adapter<SoundboardRecyclerAdapter.SoundboardViewHolder>{
 
-    // Declare an ArrayList that will contain all SoundObjects
-    private ArrayList<SoundObject> soundObjects;
+    // Declare a List that will contain all SoundObjects
+    // A PagedSoundList returns null for sounds that are not loaded yet
+    private List<SoundObject> soundObjects;
+
+    // Counts the lists handed over by submitList() so the result of an outdated comparison is dropped
+    private int listGeneration;
+
+    // Declare the FavoritesStore that tells which buttons are marked as favorite
+    private FavoritesStore favoritesStore;
+
+    // Gets notified when the user selects or deselects sounds
+    public interface SelectionListener {
+
+        // Gets called with the number of selected sounds, 0 if the selection has ended
+        void onSelectionChanged(int count);
+    }
+
+    // The user can only select sounds if there is a SelectionListener that handles them
+    private SelectionListener selectionListener;
+
+    // Contains the selected sounds by their keys in the order they were selected
+    private final LinkedHashMap<String, SoundObject> selectedSounds = new LinkedHashMap<>();
 
     // Demand all needed informations for the RecyclerView
-    // ArrayList<SoundObject> : Main content provider
-    public SoundboardRecyclerAdapter(ArrayList<SoundObject> soundObjects){
+    // List<SoundObject> : Main content provider
+    public SoundboardRecyclerAdapter(List<SoundObject> soundObjects){
 
-        // Hand over all data to the private ArrayList
+        // Hand over all data to the private List
         this.soundObjects = soundObjects;
+
+        // Every sound keeps its id when the list changes, so the RecyclerView can animate and reuse its buttons
+        setHasStableIds(true);
     }
 
     // Initialises each RecyclerView item
@@ -28,6 +56,11 @@ public class SoundboardRecyclerAdapter extends RecyclerView.Adapter<SoundboardRe
         // Set the default design for a element in the RecyclerView that is based on sound_item.xml
         View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.sound_item, null);
 
+        if (favoritesStore == null){
+
+            favoritesStore = FavoritesStore.getInstance(parent.getContext());
+        }
+
         // Returns a new ViewHolder for each RecyclerView item
         return new SoundboardViewHolder(itemView);
     }
@@ -39,17 +72,42 @@ public class SoundboardRecyclerAdapter extends RecyclerView.Adapter<SoundboardRe
         // Simplifies the set processes
         final SoundObject object = soundObjects.get(position);
 
+        // Show an empty button until the page of the sound is loaded
+        // The adapter gets notified about the change when it is available
+        if (object == null){
+
+            holder.itemTextView.setText("");
+            holder.favoriteImageView.setVisibility(View.GONE);
+            holder.itemView.setBackgroundResource(R.color.gray);
+            holder.itemView.setOnClickListener(null);
+            holder.itemView.setOnLongClickListener(null);
+            return;
+        }
+
         // Define an id for a simplified committing process
         final Integer soundID = object.getItemID();
 
         // Set the name of each sound button that is represented by the (SoundObject)object
         holder.itemTextView.setText(object.getItemName());
 
+        // Mark favorite sounds, the FavoritesStore answers from memory
+        holder.favoriteImageView.setVisibility(favoritesStore.isFavorite(object.getItemKey()) ? View.VISIBLE : View.GONE);
+
+        // Highlight selected sounds
+        holder.itemView.setBackgroundResource(selectedSounds.containsKey(object.getItemKey()) ? R.color.selected : R.color.gray);
+
         // Handle actions when the user simply clicks on a sound button
         holder.itemView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
 
+                // While the user selects sounds a click selects or deselects the sound
+                if (isSelecting()){
+
+                    toggleSelection(object);
+                    return;
+                }
+
                 // Calls a method that plays the sound
                 EventHandlerClass.startMediaPlayer(v, soundID);
             }
@@ -60,15 +118,210 @@ public class SoundboardRecyclerAdapter extends RecyclerView.Adapter<SoundboardRe
             @Override
             public boolean onLongClick(View v) {
 
+                if (isSelecting()){
+
+                    toggleSelection(object);
+                    return true;
+                }
+
                 // Calls a method that creates a PopupMenu where the user can choose between several actions
-                EventHandlerClass.popupManager(v, object);
+                EventHandlerClass.popupManager(v, object, SoundboardRecyclerAdapter.this);
                 return true;
             }
         });
     }
 
+    // Replaces all SoundObjects with a new list
+    // The new list is compared with the current one in the background and only the buttons that were
+    // inserted, removed, moved or changed are updated afterwards
+    // The lists must not be changed after they were handed over
+    public void submitList(List<SoundObject> items){
+
+        final List<SoundObject> oldItems = soundObjects;
+        final int generation = ++listGeneration;
+
+        // The list is displayed already, only drop a comparison that is still running
+        if (items == oldItems)
+            return;
+
+        // Nothing to compare, or a PagedSoundList that doesn't have all sounds in memory and can't be compared
+        if (oldItems.isEmpty() || items.isEmpty() || !isComparable(oldItems) || !isComparable(items)){
+
+            soundObjects = items;
+
+            if (oldItems.isEmpty()){
+
+                notifyItemRangeInserted(0, items.size());
+            } else if (items.isEmpty()){
+
+                notifyItemRangeRemoved(0, oldItems.size());
+            } else {
+
+                notifyDataSetChanged();
+            }
+            return;
+        }
+
+        // PagedSoundList may only be used on the UI thread, the comparison works on copies
+        final List<SoundObject> oldSnapshot = new ArrayList<>(oldItems);
+        final List<SoundObject> newSnapshot = new ArrayList<>(items);
+        final List<SoundObject> newItems = items;
+
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+
+                return DiffUtil.calculateDiff(new SoundDiffCallback(oldSnapshot, newSnapshot));
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult result) {
+
+                // Another list has been submitted in the meantime
+                if (generation != listGeneration)
+                    return;
+
+                soundObjects = newItems;
+                result.dispatchUpdatesTo(SoundboardRecyclerAdapter.this);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // Binds the button of a sound again, e.g. when it was added to the favorites
+    // Nothing happens if the sound is not in the list or not loaded yet
+    public void notifySoundChanged(String soundKey){
+
+        int position = -1;
+
+        if (soundObjects instanceof PagedSoundList){
+
+            position = ((PagedSoundList) soundObjects).indexOfSound(soundKey);
+        } else {
+
+            for (int i = 0; i < soundObjects.size(); i++){
+
+                if (soundObjects.get(i).getItemKey().equals(soundKey)){
+
+                    position = i;
+                    break;
+                }
+            }
+        }
+
+        if (position >= 0){
+
+            notifyItemChanged(position);
+        }
+    }
+
+    // Lets the user select several sounds, e.g. to share them at once
+    public void setSelectionListener(SelectionListener selectionListener){
+
+        this.selectionListener = selectionListener;
+    }
+
+    public boolean isSelectionEnabled(){
+
+        return selectionListener != null;
+    }
+
+    // Returns true while the user selects sounds
+    public boolean isSelecting(){
+
+        return !selectedSounds.isEmpty();
+    }
+
+    // Starts the selection with the given sound
+    public void startSelection(SoundObject soundObject){
+
+        if (selectionListener == null || selectedSounds.containsKey(soundObject.getItemKey()))
+            return;
+
+        selectedSounds.put(soundObject.getItemKey(), soundObject);
+        notifySoundChanged(soundObject.getItemKey());
+        selectionListener.onSelectionChanged(selectedSounds.size());
+    }
+
+    // Selects a sound or deselects it if it is selected already
+    // The selection ends when the last sound is deselected
+    public void toggleSelection(SoundObject soundObject){
+
+        if (selectedSounds.remove(soundObject.getItemKey()) == null){
+
+            selectedSounds.put(soundObject.getItemKey(), soundObject);
+        }
+
+        notifySoundChanged(soundObject.getItemKey());
+
+        if (selectionListener != null){
+
+            selectionListener.onSelectionChanged(selectedSounds.size());
+        }
+    }
+
+    // Deselects all sounds and ends the selection
+    public void clearSelection(){
+
+        if (selectedSounds.isEmpty())
+            return;
+
+        ArrayList<String> keys = new ArrayList<>(selectedSounds.keySet());
+        selectedSounds.clear();
+
+        for (String soundKey : keys){
+            notifySoundChanged(soundKey);
+        }
+
+        if (selectionListener != null){
+
+            selectionListener.onSelectionChanged(0);
+        }
+    }
+
+    // Returns the selected sounds in the order they were selected
+    public List<SoundObject> getSelectedSounds(){
+
+        return new ArrayList<>(selectedSounds.values());
+    }
+
+    // Returns true if all SoundObjects of the list are available
+    private static boolean isComparable(List<SoundObject> items){
+
+        return !(items instanceof PagedSoundList) || ((PagedSoundList) items).isComplete();
+    }
+
+    // Returns the SoundObject at the given position or null if it is not loaded yet
+    public SoundObject getItem(int position){
+
+        return soundObjects.get(position);
+    }
+
+    // Returns a stable id that is derived from the key of the sound
+    // Buttons whose sound is not loaded yet get a negative id based on their position (below NO_ID)
+    @Override
+    public long getItemId(int position) {
+
+        SoundObject object = soundObjects.get(position);
+
+        return object != null ? getStableId(object.getItemKey()) : RecyclerView.NO_ID - 1 - position;
+    }
+
+    // Returns a 64 bit FNV-1a hash of the key that is never negative
+    static long getStableId(String soundKey){
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < soundKey.length(); i++){
+
+            hash ^= soundKey.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash & Long.MAX_VALUE;
+    }
+
     // Tells the RecyclerView how many items are accessible to be displayed
-    // Should return the size of the given content provider (here: SoundObject ArrayList)
+    // Should return the size of the given content provider (here: SoundObject List)
     @Override
     public int getItemCount() {
         return soundObjects.size();
@@ -80,11 +333,58 @@ public class SoundboardRecyclerAdapter extends RecyclerView.Adapter<SoundboardRe
         // TextView to display the name of a sound button
         TextView itemTextView;
 
+        // ImageView that marks a favorite sound
+        ImageView favoriteImageView;
+
         public SoundboardViewHolder(View itemView) {
             super(itemView);
 
             // Assign itemTextView to the TextView item declared in sound_item.xml
             itemTextView = (TextView) itemView.findViewById(R.id.textViewItem);
+
+            // Assign favoriteImageView to the ImageView item declared in sound_item.xml
+            favoriteImageView = (ImageView) itemView.findViewById(R.id.imageViewFavorite);
+        }
+    }
+
+    // Compares two lists of SoundObjects by their keys
+    private static class SoundDiffCallback extends DiffUtil.Callback {
+
+        private final List<SoundObject> oldItems;
+        private final List<SoundObject> newItems;
+
+        SoundDiffCallback(List<SoundObject> oldItems, List<SoundObject> newItems){
+
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+
+            SoundObject oldItem = oldItems.get(oldItemPosition);
+            SoundObject newItem = newItems.get(newItemPosition);
+
+            return oldItem != null && newItem != null && oldItem.getItemKey().equals(newItem.getItemKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+
+            SoundObject oldItem = oldItems.get(oldItemPosition);
+            SoundObject newItem = newItems.get(newItemPosition);
+
+            return oldItem.getItemName().equals(newItem.getItemName()) && oldItem.getItemID().equals(newItem.getItemID());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps the .wav files of sounds that were evicted from the SampleCache in a folder of the app cache dir
+// The files may use budgetBytes, if they need more the least recently used files are deleted
+// The folder is read once when the cache is used the first time, the files of an earlier start keep their order by date
+public class SpillCache {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "SPILLCACHE";
+
+    private final File directory;
+    private final long budgetBytes;
+
+    // Maps the names of all spilled files to their size, the least recently used file comes first
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+    private boolean indexed;
+
+    public SpillCache(File directory, long budgetBytes){
+
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Returns the file a sound is spilled to, it may not exist yet
+    public File getFile(String name){
+
+        return new File(directory, name);
+    }
+
+    // Returns true if the file has been spilled and marks it as used
+    public synchronized boolean contains(String name){
+
+        index();
+
+        return files.get(name) != null;
+    }
+
+    // Adds a file that has just been written and deletes the least recently used files if the budget is exceeded
+    // Has to be called on a background thread
+    public void put(String name){
+
+        ArrayList<File> evicted = new ArrayList<>();
+        long length = getFile(name).length();
+
+        synchronized (this){
+
+            index();
+
+            Long previous = files.put(name, length);
+            size += length - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+
+            // Keep the file that has just been written even if it alone is bigger than the budget
+            while (size > budgetBytes && files.size() > 1 && iterator.hasNext()){
+
+                Map.Entry<String, Long> entry = iterator.next();
+
+                iterator.remove();
+                size -= entry.getValue();
+                evicted.add(getFile(entry.getKey()));
+            }
+        }
+
+        for (File file : evicted){
+
+            if (!file.delete()){
+
+                Log.e(LOG_TAG, "Failed to delete " + file.getName());
+            }
+        }
+    }
+
+    // Forgets a file that could not be used, e.g. because the system has cleared the cache dir
+    public synchronized void remove(String name){
+
+        Long length = files.remove(name);
+
+        if (length != null){
+
+            size -= length;
+        }
+    }
+
+    public synchronized long getSizeBytes(){
+
+        return size;
+    }
+
+    public long getBudgetBytes(){
+
+        return budgetBytes;
+    }
+
+    // Reads the folder once, files that were written last are used most recently
+    private void index(){
+
+        if (indexed)
+            return;
+
+        indexed = true;
+
+        File[] spilled = directory.listFiles();
+
+        if (spilled == null)
+            return;
+
+        Arrays.sort(spilled, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+
+                long comparison = a.lastModified() - b.lastModified();
+
+                return comparison < 0 ? -1 : (comparison > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : spilled){
+
+            // A file that was not written completely
+            if (file.getName().endsWith(".tmp")){
+
+                file.delete();
+                continue;
+            }
+
+            files.put(file.getName(), file.length());
+            size += file.length();
+        }
+    }
+}
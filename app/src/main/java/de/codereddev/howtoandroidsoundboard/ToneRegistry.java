@@ -0,0 +1,369 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.Manifest;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+// Sets saved sounds as ringtone, notification or alarm and remembers the MediaStore uri of every file
+// The uris are saved in a preference file (path -> uri), so a file that has been used before is set without asking the MediaStore
+// A remembered uri is checked in the background after it has been used and replaced if the MediaStore has forgotten the file
+// Files that were saved before the MediaStore knew them are registered with one bulkInsert()
+public class ToneRegistry {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = "TONEREGISTRY";
+
+    // Define a name for the preference file that maps the paths of the files to their uris
+    private static final String PREFS_NAME = "TonePref";
+
+    // There is only one ToneRegistry for the whole app
+    private static ToneRegistry instance;
+
+    // Returns the ToneRegistry of the app and creates it if it does not exist yet
+    public static synchronized ToneRegistry getInstance(Context context){
+
+        if (instance == null){
+
+            // Use the application context so no activity is leaked by the instance
+            instance = new ToneRegistry(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+
+    // Count how often a remembered uri could be used and how long it took to set a sound
+    private int hitCount;
+    private int missCount;
+    private int staleCount;
+    private long totalTime;
+
+    private ToneRegistry(Context context){
+
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Sets a saved sound as ringtone, notification or alarm and returns false if the MediaStore did not accept it
+    // type : RingtoneManager.TYPE_RINGTONE, TYPE_NOTIFICATION or TYPE_ALARM
+    // title : The name of the sound that is shown in the ringtone lists
+    public boolean assign(final int type, final File file, final String title){
+
+        long startTime = SystemClock.elapsedRealtime();
+
+        String path = file.getAbsolutePath();
+        String rememberedUri = preferences.getString(path, null);
+        boolean remembered = rememberedUri != null;
+
+        Uri toneUri = remembered ? Uri.parse(rememberedUri) : findOrInsertTone(file, title);
+
+        if (toneUri == null){
+
+            Log.e(LOG_TAG, "Failed to register " + title + " in the MediaStore");
+            return false;
+        }
+
+        RingtoneManager.setActualDefaultRingtoneUri(context, type, toneUri);
+
+        long time = SystemClock.elapsedRealtime() - startTime;
+
+        synchronized (this){
+
+            if (remembered){
+
+                hitCount++;
+            } else {
+
+                missCount++;
+            }
+            totalTime += time;
+        }
+
+        Log.i(LOG_TAG, "Set " + title + " as " + getTypeName(type) + " in " + time + " ms ("
+                + (remembered ? "remembered uri" : "MediaStore lookup") + "), " + this);
+
+        if (remembered){
+
+            // Check the uri after the sound has been set so the user doesn't wait for the MediaStore
+            final Uri checkedUri = toneUri;
+
+            SoundExporter.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    validate(type, file, title, checkedUri);
+                }
+            });
+        }
+
+        return true;
+    }
+
+    // Forgets the uri of a file, e.g. when the file has been deleted
+    public void forget(File file){
+
+        preferences.edit().remove(file.getAbsolutePath()).apply();
+    }
+
+    // Registers all files the MediaStore does not know yet, needs one query and one bulkInsert() per folder
+    // titles : Maps the files to the names of their sounds
+    // Has to be called on a background thread
+    public void registerTones(File directory, Map<File, String> titles){
+
+        // The MediaStore only accepts new tones if the app may write the external storage
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED)
+            return;
+
+        long startTime = SystemClock.elapsedRealtime();
+
+        // Files with a remembered uri are checked when they are used
+        HashMap<String, File> unknownFiles = new HashMap<>();
+
+        for (File file : titles.keySet()){
+
+            if (!preferences.contains(file.getAbsolutePath())){
+
+                unknownFiles.put(file.getAbsolutePath(), file);
+            }
+        }
+
+        if (unknownFiles.isEmpty())
+            return;
+
+        Uri baseUri = MediaStore.Audio.Media.getContentUriForPath(directory.getAbsolutePath());
+
+        try {
+
+            // Remember the files the MediaStore knows already
+            rememberTones(baseUri, directory, unknownFiles);
+
+            if (!unknownFiles.isEmpty()){
+
+                ArrayList<ContentValues> values = new ArrayList<>();
+
+                for (File file : unknownFiles.values()){
+                    values.add(createValues(file, titles.get(file)));
+                }
+
+                int inserted = context.getContentResolver().bulkInsert(baseUri, values.toArray(new ContentValues[values.size()]));
+
+                // bulkInsert() does not return the uris, so they are read with one more query
+                rememberTones(baseUri, directory, unknownFiles);
+
+                Log.d(LOG_TAG, "Registered " + inserted + " tones in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            }
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to register tones: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized String toString(){
+
+        int count = hitCount + missCount;
+
+        return "ToneRegistry[assignments=" + count
+                + ", average=" + (count > 0 ? totalTime / count : 0) + " ms"
+                + ", hits=" + hitCount
+                + ", misses=" + missCount
+                + ", stale=" + staleCount + "]";
+    }
+
+    // Runs on the export thread
+    // Replaces a remembered uri that does not point to the file anymore, e.g. because the MediaStore has been reset
+    private void validate(int type, File file, String title, Uri toneUri){
+
+        if (file.getAbsolutePath().equals(getPath(toneUri)))
+            return;
+
+        synchronized (this){
+
+            staleCount++;
+        }
+
+        forget(file);
+
+        Uri newUri = findOrInsertTone(file, title);
+
+        // Don't replace a sound the user has chosen in the meantime
+        if (newUri != null && toneUri.equals(RingtoneManager.getActualDefaultRingtoneUri(context, type))){
+
+            RingtoneManager.setActualDefaultRingtoneUri(context, type, newUri);
+        }
+
+        Log.d(LOG_TAG, "Replaced stale uri of " + title + " by " + newUri);
+    }
+
+    // Returns the uri of a file in the MediaStore and inserts the file if it is not there yet
+    private Uri findOrInsertTone(File file, String title){
+
+        final Uri baseUri = MediaStore.Audio.Media.getContentUriForPath(file.getAbsolutePath());
+        Uri toneUri = getUriForExistingTone(baseUri, file.getAbsolutePath());
+
+        try {
+
+            if (toneUri == null) {
+                toneUri = context.getContentResolver().insert(baseUri, createValues(file, title));
+            }
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to insert tone: " + e.getMessage());
+        }
+
+        if (toneUri != null){
+
+            preferences.edit().putString(file.getAbsolutePath(), toneUri.toString()).apply();
+        }
+
+        return toneUri;
+    }
+
+    private static ContentValues createValues(File file, String title){
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
+        // The file is named after the hash of the sound, so the name of the sound is used as title
+        values.put(MediaStore.MediaColumns.TITLE, title);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, "audio/mp3");
+        values.put(MediaStore.Audio.Media.ARTIST, "HandOfBlood");
+        values.put(MediaStore.Audio.Media.IS_RINGTONE, true);
+        values.put(MediaStore.Audio.Media.IS_NOTIFICATION, true);
+        values.put(MediaStore.Audio.Media.IS_ALARM, true);
+        values.put(MediaStore.Audio.Media.IS_MUSIC, false);
+        values.put(MediaStore.Audio.Media.IS_PODCAST, false);
+
+        return values;
+    }
+
+    // Remembers the uris of all files of a folder the MediaStore knows and removes them from files
+    private void rememberTones(Uri baseUri, File directory, HashMap<String, File> files){
+
+        Cursor cursor = null;
+        SharedPreferences.Editor editor = preferences.edit();
+
+        try {
+
+            cursor = context.getContentResolver().query(baseUri,
+                    new String[] {MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA},
+                    MediaStore.MediaColumns.DATA + " LIKE ?",
+                    new String[] {directory.getAbsolutePath() + "/%"},
+                    null);
+
+            while (cursor != null && cursor.moveToNext()){
+
+                String path = cursor.getString(1);
+
+                if (files.remove(path) != null){
+
+                    editor.putString(path, ContentUris.withAppendedId(baseUri, cursor.getLong(0)).toString());
+                }
+            }
+
+        } finally {
+
+            if (cursor != null){
+
+                cursor.close();
+            }
+        }
+
+        editor.apply();
+    }
+
+    // Returns the path of the file a MediaStore uri points to or null if there is no such entry
+    private String getPath(Uri toneUri){
+
+        Cursor cursor = null;
+
+        try {
+
+            cursor = context.getContentResolver().query(toneUri, new String[] {MediaStore.MediaColumns.DATA}, null, null, null);
+
+            if (cursor != null && cursor.moveToFirst()){
+
+                return cursor.getString(0);
+            }
+
+        } catch (Exception e){
+
+            Log.e(LOG_TAG, "Failed to check tone: " + e.getMessage());
+        } finally {
+
+            if (cursor != null){
+
+                cursor.close();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Calculates a URI for an existing tone.
+     *
+     * @param uri Base URI to the tone.
+     * @param filePath Path of the file that is linked to the tone.
+     * @return The URI of the existing tone or null if it does not exist.
+     */
+    private Uri getUriForExistingTone(Uri uri, String filePath) {
+
+        Cursor cursor = null;
+        try {
+
+            cursor = context.getContentResolver()
+                    .query(uri,
+                            new String[] {MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA},
+                            MediaStore.MediaColumns.DATA + " = ?",
+                            new String[] {filePath},
+                            null, null);
+
+            if (cursor != null && cursor.getCount() != 0) {
+
+                cursor.moveToFirst();
+                int mediaPos = cursor.getInt(cursor.getColumnIndex(MediaStore.MediaColumns._ID));
+                return Uri.parse(uri.toString() + "/" + mediaPos);
+            }
+        } catch (Exception e) {
+
+            Log.e(LOG_TAG, "Failed to find tone: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
+    private static String getTypeName(int type){
+
+        switch (type){
+
+            case RingtoneManager.TYPE_NOTIFICATION:
+                return "notification";
+            case RingtoneManager.TYPE_ALARM:
+                return "alarm";
+            default:
+                return "ringtone";
+        }
+    }
+}
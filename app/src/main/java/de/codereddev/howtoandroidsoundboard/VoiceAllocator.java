@@ -0,0 +1,217 @@
+package de.codereddev.howtoandroidsoundboard;
+
+// Keeps track of a fixed number of voices that can play at the same time
+// All Voice objects are created once in the constructor and reused for every sound afterwards
+public class VoiceAllocator {
+
+    // A Voice is one slot that can play one sound at a time
+    public static class Voice {
+
+        // Position of the voice in the allocator, can be used to map a voice to a player object
+        private final int index;
+
+        private boolean active;
+        private int soundID;
+        private int streamId;
+        private float volume;
+        private long startTime;
+        private long duration;
+
+        Voice(int index){
+
+            this.index = index;
+        }
+
+        public int getIndex(){
+
+            return index;
+        }
+
+        // Returns true if the voice is still assigned to a sound that has to be stopped before reusing it
+        public boolean isActive(){
+
+            return active;
+        }
+
+        public int getSoundID(){
+
+            return soundID;
+        }
+
+        public int getStreamId(){
+
+            return streamId;
+        }
+
+        public float getVolume(){
+
+            return volume;
+        }
+
+        public long getStartTime(){
+
+            return startTime;
+        }
+
+        // A duration of 0 means the length of the sound is unknown
+        public long getDuration(){
+
+            return duration;
+        }
+
+        // Returns how loud the voice is right now
+        // Sounds with a known duration get quieter the closer they are to their end
+        float getLoudness(long now){
+
+            if (duration <= 0)
+                return volume;
+
+            long left = startTime + duration - now;
+
+            return left <= 0 ? 0 : volume * left / duration;
+        }
+
+        // Returns true if the sound has a known duration and is already over
+        boolean isFinished(long now){
+
+            return duration > 0 && startTime + duration <= now;
+        }
+    }
+
+    private final Voice[] voices;
+
+    private final VoiceStealingPolicy policy;
+
+    public VoiceAllocator(int maxVoices, VoiceStealingPolicy policy){
+
+        if (maxVoices < 1)
+            throw new IllegalArgumentException("maxVoices has to be at least 1");
+
+        this.policy = policy;
+
+        voices = new Voice[maxVoices];
+        for (int i = 0; i < maxVoices; i++){
+            voices[i] = new Voice(i);
+        }
+    }
+
+    public int getMaxVoices(){
+
+        return voices.length;
+    }
+
+    public VoiceStealingPolicy getPolicy(){
+
+        return policy;
+    }
+
+    // Returns the voice that should play the given sound
+    // If the returned voice is still active its sound has to be stopped before calling start()
+    public Voice acquire(int soundID, long now){
+
+        Voice free = null;
+
+        for (Voice voice : voices){
+
+            if (!voice.active || voice.isFinished(now)){
+
+                voice.active = false;
+
+                if (free == null)
+                    free = voice;
+            }
+        }
+
+        if (free != null)
+            return free;
+
+        // All voices are in use so one of them has to be stolen
+        switch (policy){
+
+            case QUIETEST:
+                return findQuietest(now);
+
+            case RETRIGGER:
+                Voice sameSound = findBySound(soundID);
+                return sameSound != null ? sameSound : findOldest();
+
+            case OLDEST:
+            default:
+                return findOldest();
+        }
+    }
+
+    // Marks a voice as playing a sound
+    public void start(Voice voice, int soundID, int streamId, float volume, long duration, long now){
+
+        voice.active = true;
+        voice.soundID = soundID;
+        voice.streamId = streamId;
+        voice.volume = volume;
+        voice.duration = duration;
+        voice.startTime = now;
+    }
+
+    // Marks a voice as free again, e.g. when its sound has completed
+    public void release(Voice voice){
+
+        voice.active = false;
+        voice.streamId = 0;
+    }
+
+    public Voice getVoice(int index){
+
+        return voices[index];
+    }
+
+    // Marks all voices as free
+    public void releaseAll(){
+
+        for (Voice voice : voices){
+            release(voice);
+        }
+    }
+
+    private Voice findOldest(){
+
+        Voice oldest = voices[0];
+
+        for (Voice voice : voices){
+
+            if (voice.startTime < oldest.startTime)
+                oldest = voice;
+        }
+
+        return oldest;
+    }
+
+    private Voice findQuietest(long now){
+
+        Voice quietest = voices[0];
+        float quietestLoudness = quietest.getLoudness(now);
+
+        for (Voice voice : voices){
+
+            float loudness = voice.getLoudness(now);
+
+            if (loudness < quietestLoudness){
+
+                quietest = voice;
+                quietestLoudness = loudness;
+            }
+        }
+
+        return quietest;
+    }
+
+    private Voice findBySound(int soundID){
+
+        for (Voice voice : voices){
+
+            if (voice.active && voice.soundID == soundID)
+                return voice;
+        }
+
+        return null;
+    }
+}
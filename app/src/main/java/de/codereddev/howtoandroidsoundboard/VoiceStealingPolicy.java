@@ -0,0 +1,14 @@
+package de.codereddev.howtoandroidsoundboard;
+
+// Decides which playing voice is stopped when a new sound starts and all voices are in use
+public enum VoiceStealingPolicy {
+
+    // Stop the voice that has been playing the longest
+    OLDEST,
+
+    // Stop the voice that is the least audible (volume scaled by the part of the sound that is left)
+    QUIETEST,
+
+    // Restart the voice that plays the same sound if there is one, otherwise stop the oldest voice
+    RETRIGGER
+}
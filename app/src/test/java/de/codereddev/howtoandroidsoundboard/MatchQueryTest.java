@@ -0,0 +1,57 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the full-text query that {@link DatabaseHandler#toMatchQuery} builds from the typed text.
+ */
+public class MatchQueryTest {
+
+    @Test
+    public void everyWordIsAPrefix() throws Exception {
+        assertEquals("air*", DatabaseHandler.toMatchQuery("air"));
+        assertEquals("air* ho*", DatabaseHandler.toMatchQuery("Air Ho"));
+        assertEquals("air* ho*", DatabaseHandler.toMatchQuery("  air   ho  "));
+    }
+
+    @Test
+    public void quotesAreDropped() throws Exception {
+        assertEquals("air* horn*", DatabaseHandler.toMatchQuery("\"air horn\""));
+        assertEquals("air*", DatabaseHandler.toMatchQuery("air\""));
+        assertEquals("it* s*", DatabaseHandler.toMatchQuery("it's"));
+    }
+
+    @Test
+    public void starIsNoWildcard() throws Exception {
+        assertEquals("air*", DatabaseHandler.toMatchQuery("air*"));
+        assertEquals("a* b*", DatabaseHandler.toMatchQuery("a*b"));
+        assertNull(DatabaseHandler.toMatchQuery("*"));
+    }
+
+    @Test
+    public void minusIsNoExclusion() throws Exception {
+        assertEquals("horn*", DatabaseHandler.toMatchQuery("-horn"));
+        assertEquals("air* horn*", DatabaseHandler.toMatchQuery("air -horn"));
+        assertEquals("air* horn*", DatabaseHandler.toMatchQuery("Air-Horn"));
+    }
+
+    @Test
+    public void operatorsAreLowerCase() throws Exception {
+        assertEquals("air* or* horn*", DatabaseHandler.toMatchQuery("air OR horn"));
+        assertEquals("not* near*", DatabaseHandler.toMatchQuery("NOT NEAR"));
+    }
+
+    @Test
+    public void lettersAndDigitsOfAllScriptsAreKept() throws Exception {
+        assertEquals("\u00fcber* 2000*", DatabaseHandler.toMatchQuery("\u00fcber 2000"));
+    }
+
+    @Test
+    public void textWithoutWordsIsNoQuery() throws Exception {
+        assertNull(DatabaseHandler.toMatchQuery(""));
+        assertNull(DatabaseHandler.toMatchQuery("   "));
+        assertNull(DatabaseHandler.toMatchQuery("\"*-\" ()"));
+    }
+}
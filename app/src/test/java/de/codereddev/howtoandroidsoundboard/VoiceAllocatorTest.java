@@ -0,0 +1,71 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the voice stealing policies of {@link VoiceAllocator}.
+ */
+public class VoiceAllocatorTest {
+
+    @Test
+    public void freeVoicesAreUsedFirst() throws Exception {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceStealingPolicy.OLDEST);
+
+        VoiceAllocator.Voice first = allocator.acquire(1, 0);
+        allocator.start(first, 1, 10, 1.0f, 0, 0);
+        VoiceAllocator.Voice second = allocator.acquire(2, 5);
+
+        assertNotSame(first, second);
+        assertFalse(second.isActive());
+    }
+
+    @Test
+    public void oldestVoiceIsStolen() throws Exception {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceStealingPolicy.OLDEST);
+
+        VoiceAllocator.Voice first = allocator.acquire(1, 0);
+        allocator.start(first, 1, 10, 1.0f, 0, 0);
+        VoiceAllocator.Voice second = allocator.acquire(2, 5);
+        allocator.start(second, 2, 11, 1.0f, 0, 5);
+
+        assertSame(first, allocator.acquire(3, 10));
+    }
+
+    @Test
+    public void quietestVoiceIsStolen() throws Exception {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceStealingPolicy.QUIETEST);
+
+        VoiceAllocator.Voice loud = allocator.acquire(1, 0);
+        allocator.start(loud, 1, 10, 1.0f, 0, 0);
+        VoiceAllocator.Voice quiet = allocator.acquire(2, 5);
+        allocator.start(quiet, 2, 11, 0.2f, 0, 5);
+
+        assertSame(quiet, allocator.acquire(3, 10));
+    }
+
+    @Test
+    public void sameSoundIsRetriggered() throws Exception {
+        VoiceAllocator allocator = new VoiceAllocator(2, VoiceStealingPolicy.RETRIGGER);
+
+        VoiceAllocator.Voice first = allocator.acquire(1, 0);
+        allocator.start(first, 1, 10, 1.0f, 0, 0);
+        VoiceAllocator.Voice second = allocator.acquire(2, 5);
+        allocator.start(second, 2, 11, 1.0f, 0, 5);
+
+        assertSame(second, allocator.acquire(2, 10));
+        assertSame(first, allocator.acquire(3, 10));
+    }
+
+    @Test
+    public void finishedVoicesAreFreedWithoutStealing() throws Exception {
+        VoiceAllocator allocator = new VoiceAllocator(1, VoiceStealingPolicy.OLDEST);
+
+        VoiceAllocator.Voice voice = allocator.acquire(1, 0);
+        allocator.start(voice, 1, 10, 1.0f, 100, 0);
+
+        assertTrue(allocator.acquire(2, 50).isActive());
+        assertFalse(allocator.acquire(2, 150).isActive());
+    }
+}